@@ -18,6 +18,7 @@ package org.openlmis.auth.repository;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.time.ZonedDateTime;
 import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
@@ -62,6 +63,46 @@ public class UnsuccessfulAuthenticationAttemptRepositoryIntegrationTest
     entityManager.flush();
   }
 
+  @Test
+  public void shouldRegisterUnsuccessfulAttempts() {
+    User user = userRepository.save(generateUser());
+    entityManager.flush();
+
+    assertEquals(1, unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(UUID.randomUUID(), user.getId(), 60));
+    assertEquals(2, unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(UUID.randomUUID(), user.getId(), 60));
+  }
+
+  @Test
+  public void shouldStartCountingAgainAfterWindow() throws Exception {
+    User user = userRepository.save(generateUser());
+    UnsuccessfulAuthenticationAttempt attempt = generateInstance(user);
+    attempt.setAttemptCounter(2);
+    attempt.setLastUnsuccessfulAuthenticationAttemptDate(ZonedDateTime.now().minusMinutes(5));
+    unsuccessfulAuthenticationAttemptRepository.save(attempt);
+    entityManager.flush();
+
+    assertEquals(1, unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(UUID.randomUUID(), user.getId(), 60));
+  }
+
+  @Test
+  public void shouldResetCounter() throws Exception {
+    User user = userRepository.save(generateUser());
+    UnsuccessfulAuthenticationAttempt attempt = generateInstance(user);
+    attempt.setAttemptCounter(2);
+    unsuccessfulAuthenticationAttemptRepository.save(attempt);
+    entityManager.flush();
+
+    assertEquals(1, unsuccessfulAuthenticationAttemptRepository.resetCounter(user.getId()));
+    assertEquals(0, unsuccessfulAuthenticationAttemptRepository.resetCounter(user.getId()));
+
+    entityManager.clear();
+    assertEquals(Integer.valueOf(0), unsuccessfulAuthenticationAttemptRepository
+        .findByUserId(user.getId()).get().getAttemptCounter());
+  }
+
   @Override
   CrudRepository<UnsuccessfulAuthenticationAttempt, UUID> getRepository() {
     return unsuccessfulAuthenticationAttemptRepository;
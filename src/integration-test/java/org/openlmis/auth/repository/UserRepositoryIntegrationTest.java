@@ -16,8 +16,12 @@
 package org.openlmis.auth.repository;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
@@ -58,6 +62,38 @@ public class UserRepositoryIntegrationTest extends BaseCrudRepositoryIntegration
     entityManager.flush();
   }
 
+  @Test
+  public void shouldUnlockExistingUsersAndReturnThem() throws Exception {
+    User locked = saveLockedUser();
+    User other = saveLockedUser();
+    UUID missingId = UUID.randomUUID();
+
+    List<User> unlocked = userRepository.unlockByIds(Arrays.asList(locked.getId(), missingId));
+    entityManager.clear();
+
+    assertEquals(1, unlocked.size());
+    assertEquals(locked.getId(), unlocked.get(0).getId());
+    assertFalse(unlocked.get(0).isLockedOut());
+    assertFalse(userRepository.findById(locked.getId()).get().isLockedOut());
+    assertTrue(userRepository.findById(other.getId()).get().isLockedOut());
+  }
+
+  @Test
+  public void shouldDeleteExistingUsersAndReturnThem() throws Exception {
+    User deleted = saveLockedUser();
+    User other = saveLockedUser();
+    UUID missingId = UUID.randomUUID();
+
+    List<User> removed = userRepository.deleteByUserIds(Arrays.asList(deleted.getId(), missingId));
+    entityManager.clear();
+
+    assertEquals(1, removed.size());
+    assertEquals(deleted.getId(), removed.get(0).getId());
+    assertEquals(deleted.getUsername(), removed.get(0).getUsername());
+    assertFalse(userRepository.existsById(deleted.getId()));
+    assertTrue(userRepository.existsById(other.getId()));
+  }
+
   @Override
   CrudRepository<User, UUID> getRepository() {
     return userRepository;
@@ -70,4 +106,16 @@ public class UserRepositoryIntegrationTest extends BaseCrudRepositoryIntegration
     user.setEnabled(true);
     return user;
   }
+
+  // flushed and detached, so the native queries return the rows and not the cached entities
+  private User saveLockedUser() throws Exception {
+    User user = generateInstance();
+    user.setLockedOut(true);
+    userRepository.save(user);
+
+    entityManager.flush();
+    entityManager.clear();
+
+    return user;
+  }
 }
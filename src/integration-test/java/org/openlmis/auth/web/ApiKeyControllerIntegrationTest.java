@@ -53,8 +53,10 @@ import org.openlmis.auth.dto.ResultDto;
 import org.openlmis.auth.dto.RightDto;
 import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
 import org.openlmis.auth.service.AccessTokenService;
+import org.openlmis.auth.service.PermissionService;
 import org.openlmis.auth.service.consul.ConsulCommunicationService;
 import org.openlmis.auth.util.AuthenticationHelper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -82,6 +84,9 @@ public class ApiKeyControllerIntegrationTest extends BaseWebIntegrationTest {
   @MockBean
   private AuthenticationHelper authenticationHelper;
 
+  @Autowired
+  private PermissionService permissionService;
+
   private Client client = new ClientDataBuilder().buildUserClient();
 
   private ApiKey key;
@@ -113,6 +118,8 @@ public class ApiKeyControllerIntegrationTest extends BaseWebIntegrationTest {
     given(userReferenceDataService.hasRight(user.getId(), right.getId()))
         .willReturn(new ResultDto<>(true));
 
+    // permission decisions are cached, and each test stubs its own
+    permissionService.evictDecisions(Collections.singleton(user.getId()));
   }
 
   @Test
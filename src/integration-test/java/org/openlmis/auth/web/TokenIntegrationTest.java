@@ -15,15 +15,21 @@
 
 package org.openlmis.auth.web;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.openlmis.auth.web.TestWebData.Fields;
 import static org.openlmis.auth.web.TestWebData.GrantTypes;
 import static org.openlmis.auth.web.TestWebData.Tokens.DURATION;
+import static org.openlmis.auth.web.TestWebData.Tokens.SERVICE_TOKEN;
 
+import com.google.common.collect.ImmutableList;
+import guru.nidi.ramltester.junit.RamlMatchers;
 import java.util.Optional;
 import java.util.UUID;
 import org.junit.BeforeClass;
@@ -36,6 +42,7 @@ import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.repository.UnsuccessfulAuthenticationAttemptRepository;
 import org.openlmis.auth.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 
 public class TokenIntegrationTest extends BaseWebIntegrationTest {
@@ -74,6 +81,78 @@ public class TokenIntegrationTest extends BaseWebIntegrationTest {
     assertEquals(DURATION, token.getExpiresIn(), 5.0);
   }
 
+  @Test
+  public void shouldIntrospectManyTokensAtOnce() {
+    Client client = mockUserClient();
+    String token = startRequest()
+        .auth()
+        .preemptive()
+        .basic(client.getClientId(), client.getClientSecret())
+        .queryParam(Fields.GRANT_TYPE, GrantTypes.PASSWORD)
+        .queryParam(Fields.USERNAME, DummyUserMainDetailsDto.USERNAME)
+        .queryParam(Fields.PASSWORD, DummyUserMainDetailsDto.PASSWORD)
+        .when()
+        .post("/api/oauth/token")
+        .then()
+        .statusCode(200)
+        .extract()
+        .path(Fields.ACCESS_TOKEN);
+
+    sendPostRequest(SERVICE_TOKEN, "/api/tokens/introspection",
+        ImmutableList.of(token, UUID.randomUUID().toString()), null)
+        .statusCode(200)
+        .body("size()", is(2))
+        .body("[0].active", is(true))
+        .body("[0].user_name", is(DummyUserMainDetailsDto.USERNAME))
+        .body("[0].client_id", is(client.getClientId()))
+        .body("[0].referenceDataUserId", is(DummyUserMainDetailsDto.REFERENCE_ID))
+        .body("[1].active", is(false));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldAllowCachingOfCheckTokenResponse() {
+    Client client = mockUserClient();
+    String token = startRequest()
+        .auth()
+        .preemptive()
+        .basic(client.getClientId(), client.getClientSecret())
+        .queryParam(Fields.GRANT_TYPE, GrantTypes.PASSWORD)
+        .queryParam(Fields.USERNAME, DummyUserMainDetailsDto.USERNAME)
+        .queryParam(Fields.PASSWORD, DummyUserMainDetailsDto.PASSWORD)
+        .when()
+        .post("/api/oauth/token")
+        .then()
+        .statusCode(200)
+        .extract()
+        .path(Fields.ACCESS_TOKEN);
+
+    String etag = startRequest()
+        .queryParam("token", token)
+        .when()
+        .post("/api/oauth/check_token")
+        .then()
+        .statusCode(200)
+        .header(HttpHeaders.CACHE_CONTROL, containsString("private"))
+        .header(HttpHeaders.CACHE_CONTROL, containsString("max-age"))
+        .extract()
+        .header(HttpHeaders.ETAG);
+
+    assertNotNull(etag);
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+
+    startRequest()
+        .queryParam("token", token)
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .when()
+        .post("/api/oauth/check_token")
+        .then()
+        .statusCode(304);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void shouldPersistFailedLoginAttemptCounter() {
     // Guards against the failed-attempt counter being rolled back when authenticate() throws
@@ -18,6 +18,7 @@ package org.openlmis.auth.web;
 import static com.google.common.collect.ImmutableMap.of;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
@@ -41,16 +42,20 @@ import static org.openlmis.auth.service.ExpirationTokenNotifier.TOKEN_VALIDITY_H
 import static org.openlmis.auth.web.TestWebData.Tokens.USER_TOKEN;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
-import com.google.common.collect.ImmutableList;
 import com.jayway.restassured.response.ValidatableResponse;
+import com.jayway.restassured.specification.RequestSpecification;
 import guru.nidi.ramltester.junit.RamlMatchers;
 import io.restassured.mapper.TypeRef;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,7 +66,10 @@ import org.openlmis.auth.domain.PasswordResetToken;
 import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.domain.User;
 import org.openlmis.auth.dto.PasswordResetRequestDto;
+import org.openlmis.auth.dto.PermissionCheckDto;
+import org.openlmis.auth.dto.PermissionCheckResultDto;
 import org.openlmis.auth.dto.UnlockResponseDto;
+import org.openlmis.auth.dto.UserDeleteResponseDto;
 import org.openlmis.auth.dto.UserAuthDetailsResponseDto;
 import org.openlmis.auth.dto.UserDto;
 import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
@@ -93,6 +101,8 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
   private static final String RESOURCE_URL = "/api/users/auth";
   private static final String BATCH_RESOURCE_URL = RESOURCE_URL + "/batch";
   private static final String UNLOCK_URL = RESOURCE_URL + "/unlock";
+  private static final String EXPORT_URL = RESOURCE_URL + "/export";
+  private static final String PERMISSIONS_URL = RESOURCE_URL + "/permissions";
   private static final String LOCKED_OUT_PARAM = "lockedOut";
   private static final String ID_URL = RESOURCE_URL + "/{id}";
   private static final String RESET_PASS_URL = RESOURCE_URL + "/passwordReset";
@@ -101,9 +111,12 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
   private static final String RESET_TOKEN_PASS_URL = RESOURCE_URL + "/passwordResetToken";
   private static final String LOGOUT_URL = RESOURCE_URL + "/logout";
   private static final String TOKEN_URL = "/api/oauth/token";
+  private static final String REVOCATIONS_URL = "/api/tokens/revocations";
   private static final String PASS_FIELD = "newPassword";
   private static final String CONTENT_TYPE_HEADER = "Content-Type";
 
+  private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+
   @Autowired
   private UserRepository userRepository;
 
@@ -135,8 +148,8 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
 
   @Before
   public void setUp() {
-    given(userContactDetailsNotificationService.findByEmail(DummyUserMainDetailsDto.EMAIL))
-        .willReturn(ImmutableList.of(userContactDetailsDto));
+    given(userContactDetailsNotificationService.findOneByEmail(DummyUserMainDetailsDto.EMAIL))
+        .willReturn(Optional.of(userContactDetailsDto));
     given(userReferenceDataService.findOne(admin.getId()))
         .willReturn(admin);
 
@@ -150,7 +163,6 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
         any(Errors.class));
 
     passwordResetTokenRepository.deleteAll();
-    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
 
     user = userRepository.findById(admin.getId()).orElse(null);
     user.setPassword(encoder.encode(DummyUserMainDetailsDto.PASSWORD));
@@ -275,6 +287,15 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     assertNotEquals(password, newPassword);
   }
 
+  @Test
+  public void shouldRevokeTokensOfUserAfterPasswordReset() {
+    String accessToken = login(DummyUserMainDetailsDto.USERNAME, DummyUserMainDetailsDto.PASSWORD);
+
+    passwordReset("test1234", USER_TOKEN).statusCode(200);
+
+    logoutUser(401, accessToken);
+  }
+
   @Test
   public void shouldNotResetPasswordForOtherUserWithoutPermissions() {
     PermissionMessageException ex = buildUserManagerPermissionError();
@@ -318,6 +339,22 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     logoutUser(401, accessToken);
   }
 
+  @Test
+  public void shouldPublishRevokedTokenInRevocationFeed() {
+    String accessToken = login(DummyUserMainDetailsDto.USERNAME, DummyUserMainDetailsDto.PASSWORD);
+    logoutUser(200, accessToken);
+
+    startRequest(USER_TOKEN)
+        .queryParam("since", 0)
+        .when()
+        .get(REVOCATIONS_URL)
+        .then()
+        .statusCode(200)
+        .body("revocations.tokenId", hasItem(DigestUtils.md5Hex(accessToken)));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void testForgotPassword() {
     forgotPassword().statusCode(200);
@@ -361,18 +398,19 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
   }
 
   @Test
-  public void testForgotPasswordRollback() {
+  public void shouldCreatePasswordResetTokenEvenIfNotificationServiceFails() {
     willThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR))
         .given(notificationService)
         .notify(any(User.class), any(String.class), any(String.class));
 
-    forgotPassword().statusCode(500);
+    // the email is sent later from the outbox
+    forgotPassword().statusCode(200);
 
     User found = userRepository.findById(admin.getId()).orElse(null);
     assertNotNull(found);
 
     PasswordResetToken token = passwordResetTokenRepository.findOneByUser(found);
-    assertNull(token);
+    assertNotNull(token);
   }
 
   @Test
@@ -430,12 +468,12 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     UserDto user1 = new UserDto();
     user1.setId(UUID.randomUUID());
     user1.setUsername("john3");
-    userRepository.save(User.newInstance(user1));
+    userRepository.save(User.newInstance(user1, encoder));
 
     UserDto user2 = new UserDto();
     user2.setId(UUID.randomUUID());
     user2.setUsername("john4");
-    userRepository.save(User.newInstance(user2));
+    userRepository.save(User.newInstance(user2, encoder));
 
     when(userReferenceDataService.findOne(any())).thenReturn(new UserMainDetailsDto());
 
@@ -469,17 +507,32 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     User user = userRepository.findOneByUsernameIgnoreCase("john");
     assertNotNull(user);
 
+    PasswordResetToken token = new PasswordResetToken();
+    token.setUser(savedUser);
+    token.setExpiryDate(ZonedDateTime.now().plusHours(TOKEN_VALIDITY_HOURS));
+    passwordResetTokenRepository.save(token);
+
+    UUID missingId = UUID.randomUUID();
     Set<UUID> idsToRemove = new HashSet<>();
     idsToRemove.add(savedUser.getId());
+    idsToRemove.add(missingId);
 
-    startRequest(USER_TOKEN)
+    UserDeleteResponseDto response = startRequest(USER_TOKEN)
         .header(CONTENT_TYPE_HEADER, APPLICATION_JSON_VALUE)
         .body(idsToRemove)
         .given()
-        .delete(BATCH_RESOURCE_URL);
+        .delete(BATCH_RESOURCE_URL)
+        .then()
+        .statusCode(200)
+        .extract()
+        .as(UserDeleteResponseDto.class);
+
+    assertEquals(Collections.singletonList(savedUser.getId()), response.getDeleted());
+    assertEquals(Collections.singletonList(missingId), response.getNotFound());
 
     User userAfterRemoving = userRepository.findOneByUsernameIgnoreCase("john");
     assertNull(userAfterRemoving);
+    assertFalse(passwordResetTokenRepository.findById(token.getId()).isPresent());
   }
 
   @Test
@@ -550,6 +603,94 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     assertNull(findById(unlockedUsers, locked.getId()));
   }
 
+  @Test
+  public void shouldGetAuthUsersPageByPage() {
+    User first = saveLockedUser();
+    User second = saveLockedUser();
+
+    List<UUID> ids = new ArrayList<>();
+    UUID afterId = null;
+    UserDto[] page;
+
+    do {
+      RequestSpecification request = startRequest(USER_TOKEN)
+          .queryParam(LOCKED_OUT_PARAM, "true")
+          .queryParam("size", 1);
+
+      if (null != afterId) {
+        request = request.queryParam("afterId", afterId);
+      }
+
+      page = request
+          .when()
+          .get(BATCH_RESOURCE_URL)
+          .then()
+          .statusCode(200)
+          .extract()
+          .as(UserDto[].class);
+
+      assertTrue(page.length <= 1);
+      Arrays.stream(page).forEach(user -> ids.add(user.getId()));
+      afterId = page.length == 0 ? afterId : page[0].getId();
+    } while (page.length > 0);
+
+    assertTrue(ids.contains(first.getId()));
+    assertTrue(ids.contains(second.getId()));
+    assertEquals(new HashSet<>(ids).size(), ids.size());
+  }
+
+  @Test
+  public void shouldRejectNotPositivePageSizeOfAuthUsers() {
+    startRequest(USER_TOKEN)
+        .queryParam("size", 0)
+        .when()
+        .get(BATCH_RESOURCE_URL)
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void shouldRejectNegativePageOfAuthUsers() {
+    startRequest(USER_TOKEN)
+        .queryParam("page", -1)
+        .queryParam("size", 10)
+        .when()
+        .get(BATCH_RESOURCE_URL)
+        .then()
+        .statusCode(400)
+        .body(Fields.MESSAGE_KEY, equalTo(MessageKeys.ERROR_PAGE_NEGATIVE));
+  }
+
+  @Test
+  public void shouldRejectPageOfAuthUsersWithoutSize() {
+    startRequest(USER_TOKEN)
+        .queryParam("page", 1)
+        .when()
+        .get(BATCH_RESOURCE_URL)
+        .then()
+        .statusCode(400)
+        .body(Fields.MESSAGE_KEY, equalTo(MessageKeys.ERROR_SIZE_NULL));
+  }
+
+  @Test
+  public void shouldExportAuthUsersLineByLine() {
+    User locked = saveLockedUser();
+
+    String[] lines = startRequest(USER_TOKEN)
+        .when()
+        .get(EXPORT_URL)
+        .then()
+        .statusCode(200)
+        .contentType("application/x-ndjson")
+        .extract()
+        .asString()
+        .split("\n");
+
+    assertEquals(userRepository.count(), lines.length);
+    assertTrue(Arrays.stream(lines).allMatch(line -> line.startsWith("{") && line.endsWith("}")));
+    assertTrue(Arrays.stream(lines).anyMatch(line -> line.contains(locked.getId().toString())));
+  }
+
   @Test
   public void shouldUnlockUsersAndResetCounter() {
     User locked = saveLockedUser();
@@ -601,6 +742,45 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     assertEquals(getMessage(ex.asMessage()), message);
   }
 
+  @Test
+  public void shouldCheckPermissionsOfCurrentUser() {
+    PermissionCheckDto manageOwnData = new PermissionCheckDto("USERS_MANAGE",
+        UUID.fromString(DummyUserMainDetailsDto.REFERENCE_ID));
+    PermissionCheckDto manageApiKeys = new PermissionCheckDto("SERVICE_ACCOUNTS_MANAGE", null);
+
+    given(permissionService.hasRights(any())).willReturn(Arrays.asList(
+        new PermissionCheckResultDto(manageOwnData, true),
+        new PermissionCheckResultDto(manageApiKeys, false)));
+
+    PermissionCheckResultDto[] response = startRequest(USER_TOKEN)
+        .header(CONTENT_TYPE_HEADER, APPLICATION_JSON_VALUE)
+        .body(Arrays.asList(manageOwnData, manageApiKeys))
+        .given()
+        .post(PERMISSIONS_URL)
+        .then()
+        .statusCode(200)
+        .extract()
+        .as(PermissionCheckResultDto[].class);
+
+    assertEquals(2, response.length);
+    assertEquals("USERS_MANAGE", response[0].getRightName());
+    assertEquals(manageOwnData.getUserId(), response[0].getUserId());
+    assertTrue(response[0].isAllowed());
+    assertEquals("SERVICE_ACCOUNTS_MANAGE", response[1].getRightName());
+    assertFalse(response[1].isAllowed());
+  }
+
+  @Test
+  public void shouldRejectPermissionChecksWithoutRightName() {
+    startRequest(USER_TOKEN)
+        .header(CONTENT_TYPE_HEADER, APPLICATION_JSON_VALUE)
+        .body(Collections.singletonList(new PermissionCheckDto(null, UUID.randomUUID())))
+        .given()
+        .post(PERMISSIONS_URL)
+        .then()
+        .statusCode(400);
+  }
+
   private ValidatableResponse passwordReset(String password, String token) {
     return passwordReset(DummyUserMainDetailsDto.USERNAME, password, token);
   }
@@ -693,7 +873,7 @@ public class UserControllerIntegrationTest extends BaseWebIntegrationTest {
     dto.setEnabled(true);
     dto.setLockedOut(true);
 
-    return userRepository.save(User.newInstance(dto));
+    return userRepository.save(User.newInstance(dto, encoder));
   }
 
   private UserDto findById(UserDto[] users, UUID id) {
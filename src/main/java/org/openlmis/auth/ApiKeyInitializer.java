@@ -31,7 +31,7 @@ import org.springframework.stereotype.Component;
 
 /**
  * ApiKeyInitializer runs after its associated Spring application has loaded.
- * It recreated API keys to work after the system restart.
+ * It recreates API key tokens that are missing from the token store.
  */
 @Component
 @Order(20)
@@ -52,6 +52,11 @@ public class ApiKeyInitializer implements CommandLineRunner {
   }
 
   private void fixApiKey(ApiKey apiKey) {
+    if (null != tokenStore.readAccessToken(apiKey.getToken().toString())) {
+      // the token store is persistent so in most cases the token is already there
+      return;
+    }
+
     OAuth2AccessToken token = createAccessToken(apiKey);
     OAuth2Authentication authentication = createAuthentication(apiKey);
 
@@ -20,6 +20,7 @@ import java.util.Optional;
 import org.apache.commons.lang3.StringUtils;
 import org.openlmis.auth.domain.Client;
 import org.openlmis.auth.repository.ClientRepository;
+import org.openlmis.auth.service.ClientDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -33,6 +34,9 @@ public class ApiSupersetClientInitializer implements CommandLineRunner {
   @Autowired
   private ClientRepository clientRepository;
 
+  @Autowired
+  private ClientDetailsServiceImpl clientDetailsService;
+
   @Value("${auth.server.clientId.superset}")
   private String supersetClientId;
 
@@ -65,9 +69,11 @@ public class ApiSupersetClientInitializer implements CommandLineRunner {
       client.get().setRegisteredRedirectUris(supersetClientRedirectUri);
       client.get().setClientSecret(supersetClientSecret);
       clientRepository.saveAndFlush(client.get());
+      clientDetailsService.evict(supersetClientId);
     } else if (!client.isPresent()) {
       clientRepository.saveAndFlush(new Client(supersetClientId, supersetClientSecret, AUTHORITIES,
               supersetClientRedirectUri, AUTHORIZED_GRANT_TYPES, SCOPE, RESOURCE_IDS));
+      clientDetailsService.evict(supersetClientId);
     }
   }
 
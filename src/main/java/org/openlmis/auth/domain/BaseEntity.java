@@ -15,6 +15,7 @@
 
 package org.openlmis.auth.domain;
 
+import java.io.Serializable;
 import java.util.UUID;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -27,8 +28,9 @@ import org.hibernate.annotations.Type;
 
 @MappedSuperclass
 @EqualsAndHashCode
-public abstract class BaseEntity implements Identifiable {
+public abstract class BaseEntity implements Identifiable, Serializable {
   static final String UUID_TYPE = "pg-uuid";
+  private static final long serialVersionUID = 1L;
 
   @Id
   @GeneratedValue(generator = "uuid-gen")
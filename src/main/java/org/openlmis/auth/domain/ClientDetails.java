@@ -32,6 +32,7 @@ import org.springframework.util.StringUtils;
 
 public class ClientDetails implements org.springframework.security.oauth2.provider.ClientDetails {
   private static final Logger LOGGER = LoggerFactory.getLogger(ClientDetails.class);
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
   @Getter
   @Setter
@@ -97,7 +98,7 @@ public class ClientDetails implements org.springframework.security.oauth2.provid
     String json = client.getAdditionalInformation();
     if (null != json) {
       try {
-        this.additionalInformation = new ObjectMapper().readValue(json, Map.class);
+        this.additionalInformation = OBJECT_MAPPER.readValue(json, Map.class);
       } catch (Exception ex) {
         LOGGER.warn("Could not decode JSON for additional information: " + this, ex);
       }
@@ -0,0 +1,69 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.domain;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Type;
+
+/**
+ * An email waiting in the notification outbox. The message is kept as message keys and the
+ * link, and is rendered only when it is sent.
+ */
+@Entity
+@Table(name = "notification_outbox")
+@NoArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode(callSuper = true)
+public class OutboxNotification extends BaseEntity {
+
+  @Type(type = UUID_TYPE)
+  @Column(nullable = false)
+  private UUID userId;
+
+  @Column(nullable = false, unique = true, columnDefinition = "text")
+  private String deduplicationKey;
+
+  @Column(nullable = false, columnDefinition = "text")
+  private String subjectKey;
+
+  @Column(nullable = false, columnDefinition = "text")
+  private String bodyKey;
+
+  @Column(nullable = false, columnDefinition = "text")
+  private String bodyUrl;
+
+  @Column(nullable = false, columnDefinition = "text")
+  private String locale;
+
+  @Column(nullable = false)
+  private Integer attempts;
+
+  @Column(nullable = false, columnDefinition = "timestamp with time zone")
+  private ZonedDateTime nextAttemptDate;
+
+  @Column(nullable = false, columnDefinition = "timestamp with time zone")
+  private ZonedDateTime createdDate;
+
+}
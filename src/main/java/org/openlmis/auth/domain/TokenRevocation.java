@@ -0,0 +1,54 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.domain;
+
+import java.time.ZonedDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * An entry of the revocation feed. Either the token id or the user name is set: the former
+ * when a single access token has been revoked, the latter when all tokens of a user have been.
+ * Versions grow with each entry and become visible in their order, so a reader can ask only for
+ * entries newer than the last one it has seen. The entries are written by
+ * {@link org.openlmis.auth.repository.TokenRevocationRepository#publish(String, String)}.
+ */
+@Entity
+@Table(name = "token_revocations")
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@EqualsAndHashCode(of = "version")
+public class TokenRevocation {
+
+  @Id
+  private Long version;
+
+  @Column(name = "tokenid")
+  private String tokenId;
+
+  @Column(name = "username")
+  private String userName;
+
+  @Column(name = "revokeddate", nullable = false, columnDefinition = "timestamp with time zone")
+  private ZonedDateTime revokedDate;
+
+}
@@ -28,7 +28,7 @@ import lombok.Setter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.StringUtils;
 
 @Getter
@@ -37,7 +37,8 @@ import org.springframework.util.StringUtils;
 @Table(name = "auth_users")
 @JsonIgnoreProperties(value = { "authorities" }, ignoreUnknown = true)
 public class User extends BaseEntity implements UserDetails {
-  private static final BCryptPasswordEncoder ENCODER = new BCryptPasswordEncoder();
+  // users are serialized with the tokens kept in the token store
+  private static final long serialVersionUID = 1L;
 
   @Column(nullable = false, unique = true)
   private String username;
@@ -52,30 +53,45 @@ public class User extends BaseEntity implements UserDetails {
   private boolean lockedOut;
 
   /**
-   * Creates new instance of {@link User} based on passed data.
+   * Creates new instance of {@link User} based on passed data. The password is hashed with the
+   * given encoder.
    */
-  public static User newInstance(Importer importer) {
+  public static User newInstance(Importer importer, PasswordEncoder encoder) {
     User user = new User();
     user.setId(importer.getId());
-    user.updateFrom(importer);
+    user.updateFrom(importer, encoder);
 
     return user;
   }
 
   /**
-   * Update user data from {@link Importer}.
+   * Update user data from {@link Importer}. The new password, if any, is hashed with the given
+   * encoder.
    */
-  public void updateFrom(Importer importer) {
+  public void updateFrom(Importer importer, PasswordEncoder encoder) {
     username = importer.getUsername();
     enabled = importer.getEnabled();
     lockedOut = importer.isLockedOut();
 
     String newPassword = importer.getPassword();
     if (StringUtils.hasText(newPassword)) {
-      password = ENCODER.encode(newPassword);
+      password = encoder.encode(newPassword);
     }
   }
 
+  /**
+   * Creates a copy of this user without the password hash, to be stored with tokens.
+   */
+  public User withoutPassword() {
+    User user = new User();
+    user.setId(getId());
+    user.username = username;
+    user.enabled = enabled;
+    user.lockedOut = lockedOut;
+
+    return user;
+  }
+
   @Override
   public Collection<? extends GrantedAuthority> getAuthorities() {
     return AuthorityUtils.createAuthorityList(UserRole.USER.name());
@@ -15,15 +15,25 @@
 
 package org.openlmis.auth.dto;
 
+import java.util.ArrayList;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
-public class SaveBatchResultDto<T> {
-  private List<T> successfulResults;
-  private List<T> failedResults;
+@Setter
+@ToString
+public class TokenRevocationFeedDto {
+
+  private long version;
+
+  private boolean complete;
+
+  private List<TokenRevocationDto> revocations = new ArrayList<>();
+
 }
@@ -51,4 +51,20 @@ public final class UserDto implements User.Importer, User.Exporter {
     this.username = username;
     this.enabled = enabled;
   }
+
+  /**
+   * Creates UserDto object without password, as returned by the list of auth users.
+   *
+   * @param id user id
+   * @param username username
+   * @param enabled is user enabled
+   * @param lockedOut is user locked out
+   * @param lastUnsuccessfulAuthenticationAttemptDate date of the last failed login, if any
+   */
+  public UserDto(UUID id, String username, Boolean enabled, boolean lockedOut,
+      ZonedDateTime lastUnsuccessfulAuthenticationAttemptDate) {
+    this(id, username, enabled);
+    this.lockedOut = lockedOut;
+    this.lastUnsuccessfulAuthenticationAttemptDate = lastUnsuccessfulAuthenticationAttemptDate;
+  }
 }
@@ -31,10 +31,14 @@ public abstract class MessageKeys {
   public static final String ERROR_IO = ERROR_PREFIX + ".io";
 
   public static final String ERROR_TOO_MANY_REQUESTS = ERROR_PREFIX + ".tooManyRequests";
+  public static final String ERROR_SERVICE_BUSY = ERROR_PREFIX + ".serviceBusy";
 
   public static final String ERROR_TOKEN_INVALID = ERROR_PREFIX + ".token.invalid";
   public static final String ERROR_TOKEN_EXPIRED = ERROR_PREFIX + ".token.expired";
   public static final String ERROR_TOKEN_REQUIRED = ERROR_PREFIX + ".token.required";
+  public static final String ERROR_TOKEN_BATCH_TOO_LARGE = ERROR_PREFIX + ".token.batchTooLarge";
+  public static final String ERROR_PERMISSION_BATCH_TOO_LARGE =
+      ERROR_PREFIX + ".permission.batchTooLarge";
 
   public static final String ERROR_CLIENT_NOT_FOUND = ERROR_PREFIX + ".client.notFound";
 
@@ -74,15 +78,15 @@ public abstract class MessageKeys {
   public static final String ERROR_CLIENT_NOT_SUPPORTED =
       ERROR_PREFIX + ".apiKey.create.clientUserNotSupported";
 
-  public static final String ERROR_SEND_NOTIFICATION_FAILURE =
-      ERROR_PREFIX + ".sendNotification.failure";
-
   public static final String ERROR_SIZE_NULL =
        ERROR_PREFIX + ".pageable.size.null";
 
   public static final String ERROR_SIZE_NOT_POSITIVE =
        ERROR_PREFIX + ".pageable.size.notPositive";
 
+  public static final String ERROR_PAGE_NEGATIVE =
+       ERROR_PREFIX + ".pageable.page.negative";
+
   public static final String ERROR_SAVING_BATCH_AUTH_DETAILS =
       ERROR_PREFIX + ".save.batch.auth.details";
 
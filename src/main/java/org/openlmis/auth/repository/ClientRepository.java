@@ -15,12 +15,25 @@
 
 package org.openlmis.auth.repository;
 
+import java.util.List;
 import java.util.Optional;
 import org.openlmis.auth.domain.Client;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface ClientRepository extends JpaRepository<Client, String> {
 
   Optional<Client> findOneByClientId(@Param("clientId") String clientId);
+
+  // Sets the given resource ids to all clients in a single statement. Only clients with other
+  // resource ids are written; their ids are returned, so they can be evicted from the cache.
+  @Transactional
+  @Query(value = "UPDATE auth.oauth_client_details "
+      + "SET resourceids = :resourceIds "
+      + "WHERE resourceids IS DISTINCT FROM :resourceIds "
+      + "RETURNING clientid",
+      nativeQuery = true)
+  List<String> updateResourceIds(@Param("resourceIds") String resourceIds);
 }
@@ -0,0 +1,69 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.repository;
+
+import java.util.List;
+import java.util.UUID;
+import org.openlmis.auth.domain.OutboxNotification;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface OutboxNotificationRepository extends JpaRepository<OutboxNotification, UUID> {
+
+  // A pending notification with the same key is replaced, so the user gets only the newest
+  // email. The id changes too, so a dispatcher that is sending the old content at the same time
+  // can't remove or reschedule the new one.
+  @Modifying
+  @Query(value = "INSERT INTO auth.notification_outbox AS o "
+      + "(id, userid, deduplicationkey, subjectkey, bodykey, bodyurl, locale, attempts, "
+      + "nextattemptdate, createddate) "
+      + "VALUES (:id, :userId, :key, :subjectKey, :bodyKey, :bodyUrl, :locale, 0, now(), now()) "
+      + "ON CONFLICT (deduplicationkey) DO UPDATE SET "
+      + "id = EXCLUDED.id, subjectkey = EXCLUDED.subjectkey, bodykey = EXCLUDED.bodykey, "
+      + "bodyurl = EXCLUDED.bodyurl, locale = EXCLUDED.locale, attempts = 0, "
+      + "nextattemptdate = now(), createddate = now()",
+      nativeQuery = true)
+  int enqueue(@Param("id") UUID id, @Param("userId") UUID userId, @Param("key") String key,
+      @Param("subjectKey") String subjectKey, @Param("bodyKey") String bodyKey,
+      @Param("bodyUrl") String bodyUrl, @Param("locale") String locale);
+
+  // Claims due notifications for the given number of seconds, so other instances skip them
+  // while they are being sent and pick them up again if this instance dies before it is done.
+  @Query(value = "UPDATE auth.notification_outbox "
+      + "SET attempts = attempts + 1, "
+      + "nextattemptdate = now() + :leaseSeconds * INTERVAL '1 second' "
+      + "WHERE id IN (SELECT id FROM auth.notification_outbox "
+      + "WHERE nextattemptdate <= now() ORDER BY nextattemptdate LIMIT :batchSize "
+      + "FOR UPDATE SKIP LOCKED) "
+      + "RETURNING *",
+      nativeQuery = true)
+  List<OutboxNotification> claimDue(@Param("batchSize") int batchSize,
+      @Param("leaseSeconds") long leaseSeconds);
+
+  @Modifying
+  @Query(value = "UPDATE auth.notification_outbox "
+      + "SET nextattemptdate = now() + :delaySeconds * INTERVAL '1 second' "
+      + "WHERE id = :id",
+      nativeQuery = true)
+  int reschedule(@Param("id") UUID id, @Param("delaySeconds") long delaySeconds);
+
+  @Modifying
+  @Query(value = "DELETE FROM auth.notification_outbox WHERE id = :id", nativeQuery = true)
+  int remove(@Param("id") UUID id);
+
+}
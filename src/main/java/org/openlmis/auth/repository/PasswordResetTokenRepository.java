@@ -15,9 +15,21 @@
 
 package org.openlmis.auth.repository;
 
+import java.util.Collection;
+import java.util.UUID;
 import org.openlmis.auth.domain.PasswordResetToken;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface PasswordResetTokenRepository
     extends ExpirationTokenRepository<PasswordResetToken> {
 
+  // The tokens are not removed by ON DELETE CASCADE, so they have to be removed before the users.
+  @Modifying
+  @Query(value = "DELETE FROM auth.password_reset_tokens "
+      + "WHERE userid IN (:userIds)",
+      nativeQuery = true)
+  int deleteByUserIds(@Param("userIds") Collection<UUID> userIds);
+
 }
@@ -0,0 +1,85 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.repository;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.openlmis.auth.domain.TokenRevocation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+
+  List<TokenRevocation> findByVersionGreaterThanOrderByVersionAsc(Long version,
+      Pageable pageable);
+
+  // Takes the next version from the single row of token_revocation_versions. The row stays
+  // locked until the transaction ends, so the next revocation waits for this one to be committed
+  // and readers never see a version before all the lower ones.
+  @Modifying
+  @Query(value = "WITH next AS ("
+      + "UPDATE auth.token_revocation_versions SET latestversion = latestversion + 1 "
+      + "RETURNING latestversion) "
+      + "INSERT INTO auth.token_revocations (version, tokenid, username, revokeddate) "
+      + "SELECT latestversion, :tokenId, :userName, now() FROM next",
+      nativeQuery = true)
+  int publish(@Param("tokenId") String tokenId, @Param("userName") String userName);
+
+  // Publishes all the given users with a single update of the versions row, which takes as many
+  // consecutive versions at once, so the row is locked only from this statement until commit.
+  @Modifying
+  @Query(value = "WITH names AS ("
+      + "SELECT username, idx "
+      + "FROM unnest(CAST(ARRAY[:userNames] AS text[])) WITH ORDINALITY AS n(username, idx)), "
+      + "next AS ("
+      + "UPDATE auth.token_revocation_versions "
+      + "SET latestversion = latestversion + (SELECT COUNT(*) FROM names) "
+      + "RETURNING latestversion) "
+      + "INSERT INTO auth.token_revocations (version, tokenid, username, revokeddate) "
+      + "SELECT next.latestversion - (SELECT COUNT(*) FROM names) + names.idx, "
+      + "NULL, names.username, now() "
+      + "FROM next CROSS JOIN names",
+      nativeQuery = true)
+  int publishUsers(@Param("userNames") Collection<String> userNames);
+
+  // The highest version issued so far, also when the revocations have already been removed.
+  @Query(value = "SELECT latestversion FROM auth.token_revocation_versions", nativeQuery = true)
+  long findLatestVersion();
+
+  // The highest version that has been removed, readers that know an older one missed some.
+  @Query(value = "SELECT purgedversion FROM auth.token_revocation_versions", nativeQuery = true)
+  long findPurgedVersion();
+
+  @Query(value = "SELECT MAX(version) FROM auth.token_revocations WHERE revokeddate < :date",
+      nativeQuery = true)
+  Long findLatestVersionRevokedBefore(@Param("date") ZonedDateTime date);
+
+  @Modifying
+  @Query(value = "UPDATE auth.token_revocation_versions "
+      + "SET purgedversion = GREATEST(purgedversion, :version)",
+      nativeQuery = true)
+  int updatePurgedVersion(@Param("version") long version);
+
+  @Modifying
+  @Query(value = "DELETE FROM auth.token_revocations WHERE version <= :version",
+      nativeQuery = true)
+  int deleteByVersionLessThanEqual(@Param("version") long version);
+
+}
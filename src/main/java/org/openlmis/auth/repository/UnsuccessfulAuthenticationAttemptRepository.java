@@ -15,14 +15,49 @@
 
 package org.openlmis.auth.repository;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
 import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface UnsuccessfulAuthenticationAttemptRepository
     extends CrudRepository<UnsuccessfulAuthenticationAttempt, UUID> {
 
   Optional<UnsuccessfulAuthenticationAttempt> findByUserId(UUID userId);
 
+  // Counts an unsuccessful attempt in a single statement, so concurrent logins of the same user
+  // don't need a lock. The counter starts again from one if the previous attempt is older than
+  // the given number of seconds. Returns the new value of the counter.
+  @Query(value = "INSERT INTO auth.unsuccessful_authentication_attempts AS a "
+      + "(id, userid, lastunsuccessfulauthenticationattemptdate, attemptcounter) "
+      + "VALUES (:id, :userId, now(), 1) "
+      + "ON CONFLICT (userid) DO UPDATE SET "
+      + "attemptcounter = CASE "
+      + "WHEN a.lastunsuccessfulauthenticationattemptdate "
+      + "< now() - :windowSeconds * INTERVAL '1 second' THEN 1 "
+      + "ELSE COALESCE(a.attemptcounter, 0) + 1 END, "
+      + "lastunsuccessfulauthenticationattemptdate = now() "
+      + "RETURNING attemptcounter",
+      nativeQuery = true)
+  int registerUnsuccessfulAttempt(@Param("id") UUID id, @Param("userId") UUID userId,
+      @Param("windowSeconds") long windowSeconds);
+
+  @Modifying
+  @Query(value = "UPDATE auth.unsuccessful_authentication_attempts "
+      + "SET attemptcounter = 0, lastunsuccessfulauthenticationattemptdate = now() "
+      + "WHERE userid = :userId AND attemptcounter > 0",
+      nativeQuery = true)
+  int resetCounter(@Param("userId") UUID userId);
+
+  @Modifying
+  @Query(value = "UPDATE auth.unsuccessful_authentication_attempts "
+      + "SET attemptcounter = 0, lastunsuccessfulauthenticationattemptdate = now() "
+      + "WHERE userid IN (:userIds) AND attemptcounter > 0",
+      nativeQuery = true)
+  int resetCounters(@Param("userIds") Collection<UUID> userIds);
+
 }
@@ -15,12 +15,12 @@
 
 package org.openlmis.auth.repository;
 
-import java.util.Optional;
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
-import javax.persistence.LockModeType;
 import org.openlmis.auth.domain.User;
-import org.springframework.data.jpa.repository.Lock;
+import org.openlmis.auth.dto.UserDto;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
@@ -30,14 +30,58 @@ public interface UserRepository extends CrudRepository<User, UUID> {
 
   User findOneByUsernameIgnoreCase(@Param("username") String username);
 
-  // Loads a user with a pessimistic write lock, serializing admin unlock vs. authentication.
-  @Lock(LockModeType.PESSIMISTIC_WRITE)
-  @Query("SELECT u FROM User u WHERE u.id = :id")
-  Optional<User> findByIdForUpdate(@Param("id") UUID id);
+  // Returns users with ids greater than the given one, in the order of ids, together with the
+  // date of their last unsuccessful login. Served by the (lockedout, id) index.
+  @Query("SELECT new org.openlmis.auth.dto.UserDto("
+      + "u.id, u.username, u.enabled, u.lockedOut, a.lastUnsuccessfulAuthenticationAttemptDate) "
+      + "FROM User u LEFT JOIN UnsuccessfulAuthenticationAttempt a ON a.user = u "
+      + "WHERE u.id > :afterId AND u.lockedOut IN :lockedOut "
+      + "ORDER BY u.id")
+  List<UserDto> findAuthUsers(@Param("afterId") UUID afterId,
+      @Param("lockedOut") Collection<Boolean> lockedOut, Pageable pageable);
 
+  // Changes only the lockout flag of the user, so a password changed at the same time by another
+  // transaction is not overwritten with the one read before.
   @Modifying
-  @Query(value = "DELETE FROM auth.auth_users au "
-      + "WHERE au.id IN (:userIds)",
+  @Query(value = "UPDATE auth.auth_users "
+      + "SET lockedout = :lockedOut "
+      + "WHERE id = :id",
       nativeQuery = true)
-  void deleteByUserIds(@Param("userIds") Set<UUID> userIds);
+  int updateLockedOut(@Param("id") UUID id, @Param("lockedOut") boolean lockedOut);
+
+  // Sets the lockout flag only if it is not set yet, so of concurrent failed logins only the one
+  // that actually locked the user out gets 1.
+  @Modifying
+  @Query(value = "UPDATE auth.auth_users "
+      + "SET lockedout = true "
+      + "WHERE id = :id AND lockedout = false",
+      nativeQuery = true)
+  int lockOut(@Param("id") UUID id);
+
+  // Replaces the password hash only if it is still the given one, so a rehash of the old password
+  // does not overwrite a password that was changed in the meantime.
+  @Modifying
+  @Query(value = "UPDATE auth.auth_users "
+      + "SET password = :newPassword "
+      + "WHERE id = :id AND password = :oldPassword",
+      nativeQuery = true)
+  int updatePassword(@Param("id") UUID id, @Param("oldPassword") String oldPassword,
+      @Param("newPassword") String newPassword);
+
+  // Clears the lockout flag of all the given users in a single statement and returns the users
+  // that exist, so the caller can tell them apart from the missing ones.
+  @Query(value = "UPDATE auth.auth_users "
+      + "SET lockedout = false "
+      + "WHERE id IN (:userIds) "
+      + "RETURNING *",
+      nativeQuery = true)
+  List<User> unlockByIds(@Param("userIds") Collection<UUID> userIds);
+
+  // Deletes the given users in a single statement and returns the ones that existed. Rows that
+  // reference the users without ON DELETE CASCADE have to be removed first.
+  @Query(value = "DELETE FROM auth.auth_users "
+      + "WHERE id IN (:userIds) "
+      + "RETURNING *",
+      nativeQuery = true)
+  List<User> deleteByUserIds(@Param("userIds") Collection<UUID> userIds);
 }
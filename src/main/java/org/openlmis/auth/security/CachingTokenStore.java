@@ -0,0 +1,215 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded read-through cache in front of another {@link ExtendedTokenStore}. Access tokens and
+ * their authentications are cached by token value, so validating a token that was recently used
+ * does not reach the backing store. Entries expire a fixed time after they were loaded, which
+ * bounds how long a token removed on another instance of the service can still be accepted here.
+ */
+public class CachingTokenStore implements ExtendedTokenStore {
+
+  private final ExtendedTokenStore delegate;
+
+  private final Cache<String, OAuth2AccessToken> accessTokens;
+  private final Cache<String, OAuth2Authentication> authentications;
+
+  /**
+   * Creates a new instance of {@link CachingTokenStore}.
+   *
+   * @param delegate   the store that holds the tokens
+   * @param maxSize    maximum number of access tokens kept in the cache
+   * @param ttlSeconds number of seconds after which a cached entry is loaded again
+   */
+  public CachingTokenStore(ExtendedTokenStore delegate, long maxSize, long ttlSeconds) {
+    this.delegate = delegate;
+    this.accessTokens = buildCache(maxSize, ttlSeconds);
+    this.authentications = buildCache(maxSize, ttlSeconds);
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    OAuth2Authentication authentication = authentications.getIfPresent(token);
+
+    if (null == authentication) {
+      authentication = delegate.readAuthentication(token);
+
+      if (null != authentication) {
+        authentications.put(token, authentication);
+      }
+    }
+
+    return authentication;
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    delegate.storeAccessToken(token, authentication);
+
+    accessTokens.put(token.getValue(), token);
+    authentications.put(token.getValue(), authentication);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    OAuth2AccessToken token = accessTokens.getIfPresent(tokenValue);
+
+    if (null == token) {
+      token = delegate.readAccessToken(tokenValue);
+
+      if (null != token) {
+        accessTokens.put(tokenValue, token);
+      }
+    }
+
+    return token;
+  }
+
+  @Override
+  public void updateAccessTokens(Collection<OAuth2AccessToken> tokens) {
+    delegate.updateAccessTokens(tokens);
+
+    // a token removed in the meantime must not get back to the cache
+    tokens.forEach(token -> accessTokens.asMap().replace(token.getValue(), token));
+  }
+
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    delegate.removeAccessToken(token);
+    evict(token.getValue());
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken,
+      OAuth2Authentication authentication) {
+    delegate.storeRefreshToken(refreshToken, authentication);
+  }
+
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+    return delegate.readRefreshToken(tokenValue);
+  }
+
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return delegate.readAuthenticationForRefreshToken(token);
+  }
+
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    delegate.removeRefreshToken(token);
+  }
+
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+
+    Set<String> issuedWithRefreshToken = accessTokens
+        .asMap()
+        .values()
+        .stream()
+        .filter(token -> null != token.getRefreshToken())
+        .filter(token -> refreshToken.getValue().equals(token.getRefreshToken().getValue()))
+        .map(OAuth2AccessToken::getValue)
+        .collect(Collectors.toSet());
+
+    issuedWithRefreshToken.forEach(this::evict);
+  }
+
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    return delegate.getAccessToken(authentication);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId,
+      String userName) {
+    return delegate.findTokensByClientIdAndUserName(clientId, userName);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return delegate.findTokensByClientId(clientId);
+  }
+
+  @Override
+  public List<String> removeTokensByUserName(String userName) {
+    List<String> removed = delegate.removeTokensByUserName(userName);
+    removed.forEach(this::evict);
+
+    return removed;
+  }
+
+  // expired tokens that are still cached are removed when read, or drop out of the cache
+  @Override
+  public TokenStoreSlice removeExpiredAccessTokens(String afterKey, int sliceSize) {
+    return delegate.removeExpiredAccessTokens(afterKey, sliceSize);
+  }
+
+  @Override
+  public TokenStoreSlice removeExpiredRefreshTokens(String afterKey, int sliceSize) {
+    return delegate.removeExpiredRefreshTokens(afterKey, sliceSize);
+  }
+
+  // if called in a transaction, the token is removed again after commit, so a concurrent request
+  // that read it before the removal was committed can't keep it in the cache
+  private void evict(String tokenValue) {
+    invalidate(tokenValue);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              invalidate(tokenValue);
+            }
+          });
+    }
+  }
+
+  private void invalidate(String tokenValue) {
+    accessTokens.invalidate(tokenValue);
+    authentications.invalidate(tokenValue);
+  }
+
+  private static <V> Cache<String, V> buildCache(long maxSize, long ttlSeconds) {
+    return CacheBuilder
+        .newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+}
@@ -15,17 +15,20 @@
 
 package org.openlmis.auth.security;
 
-import java.util.Date;
+import static org.springframework.security.oauth2.provider.token.AccessTokenConverter.JTI;
+
 import java.util.Optional;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
 
 public class CustomTokenServices extends DefaultTokenServices {
 
-  @Value("#{${token.validitySeconds} * 1000}")
-  private Integer validityMs;
+  private TokenExpirationExtender tokenExpirationExtender;
+
+  public void setTokenExpirationExtender(TokenExpirationExtender tokenExpirationExtender) {
+    this.tokenExpirationExtender = tokenExpirationExtender;
+  }
 
   @Override
   public OAuth2AccessToken readAccessToken(String accessToken) {
@@ -35,7 +38,8 @@ public class CustomTokenServices extends DefaultTokenServices {
         .ofNullable(token)
         .filter(this::hasExpirationDate)
         .filter(this::isNotExpired)
-        .ifPresent(this::adjustExpirationDate);
+        .filter(this::isNotJwt)
+        .ifPresent(tokenExpirationExtender::extend);
 
     return token;
   }
@@ -48,8 +52,9 @@ public class CustomTokenServices extends DefaultTokenServices {
     return !token.isExpired();
   }
 
-  private void adjustExpirationDate(DefaultOAuth2AccessToken token) {
-    token.setExpiration(new Date(System.currentTimeMillis() + validityMs));
+  // the expiration date of a JWT is signed, so it can't be moved without issuing a new token
+  private boolean isNotJwt(OAuth2AccessToken token) {
+    return !token.getAdditionalInformation().containsKey(JTI);
   }
 
 }
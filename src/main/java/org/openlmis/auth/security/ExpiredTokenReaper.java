@@ -0,0 +1,124 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes expired tokens from the token store. Tokens that are never used again after they
+ * expire (for example because the user did not log out) would otherwise stay in the store
+ * forever. Each run examines one slice of access tokens and one slice of refresh tokens, so the
+ * store is walked incrementally, and the number of live tokens is published after each full
+ * pass.
+ */
+@Component
+public class ExpiredTokenReaper {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredTokenReaper.class);
+
+  private static final String TYPE = "type";
+
+  @Autowired
+  private TokenStore tokenStore;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${token.reaper.sliceSize}")
+  private int sliceSize;
+
+  private Pass accessTokens;
+  private Pass refreshTokens;
+
+  /**
+   * Initiates metrics.
+   */
+  @PostConstruct
+  public void init() {
+    accessTokens = new Pass("access", ExtendedTokenStore::removeExpiredAccessTokens);
+    refreshTokens = new Pass("refresh", ExtendedTokenStore::removeExpiredRefreshTokens);
+  }
+
+  /**
+   * Removes expired tokens from the next slice of the token store.
+   */
+  @Scheduled(fixedDelayString = "${token.reaper.intervalMillis}")
+  public void reap() {
+    // tokens kept in the heap are removed by the store itself
+    if (!(tokenStore instanceof ExtendedTokenStore)) {
+      return;
+    }
+
+    try {
+      accessTokens.next((ExtendedTokenStore) tokenStore);
+      refreshTokens.next((ExtendedTokenStore) tokenStore);
+    } catch (RuntimeException exp) {
+      LOGGER.warn("Could not remove expired tokens", exp);
+    }
+  }
+
+  private final class Pass {
+    private final String type;
+    private final SliceFunction removeExpired;
+
+    private final Counter removed;
+    private final Counter removedBytes;
+    private final AtomicLong live = new AtomicLong();
+
+    private String lastKey;
+    private long liveInPass;
+
+    Pass(String type, SliceFunction removeExpired) {
+      this.type = type;
+      this.removeExpired = removeExpired;
+      this.removed = meterRegistry.counter("auth.token.reaper.removed", TYPE, type);
+      this.removedBytes = meterRegistry.counter("auth.token.reaper.removed.bytes", TYPE, type);
+
+      meterRegistry.gauge("auth.token.store.live", Tags.of(TYPE, type), live);
+    }
+
+    void next(ExtendedTokenStore store) {
+      TokenStoreSlice slice = removeExpired.apply(store, lastKey, sliceSize);
+
+      removed.increment(slice.getRemoved());
+      removedBytes.increment(slice.getRemovedBytes());
+      liveInPass += slice.getSize() - slice.getRemoved();
+      lastKey = slice.getLastKey();
+
+      if (slice.isLast()) {
+        LOGGER.debug("Finished a pass over {} tokens, {} are live", type, liveInPass);
+        live.set(liveInPass);
+        liveInPass = 0;
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface SliceFunction {
+    TokenStoreSlice apply(ExtendedTokenStore store, String afterKey, int sliceSize);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * A {@link TokenStore} that also allows changes made to already stored access tokens (like
+ * a new expiration date set by {@link TokenExpirationExtender}) to be written back, so they are
+ * not lost when the store keeps its state outside of the JVM heap.
+ */
+public interface ExtendedTokenStore extends TokenStore {
+
+  /**
+   * Writes the current state of the given access tokens back to the store. Tokens that are not
+   * in the store (for example because they have been removed in the meantime) are skipped.
+   *
+   * @param tokens the access tokens that have been modified
+   */
+  void updateAccessTokens(Collection<OAuth2AccessToken> tokens);
+
+  /**
+   * Removes all access tokens of the given user, together with their refresh tokens. The tokens
+   * are found by the username index, so it takes time proportional to the number of tokens of
+   * the user.
+   *
+   * @param userName the name of the user
+   * @return the values of the removed access tokens
+   */
+  List<String> removeTokensByUserName(String userName);
+
+  /**
+   * Removes expired access tokens from a slice of the store. Slices are ordered by token key,
+   * so the whole store can be walked by passing the last key of a slice to the next call.
+   *
+   * @param afterKey  the key after which the slice starts, or null to start from the beginning
+   * @param sliceSize the maximum number of tokens in the slice
+   * @return the removed tokens and the position of the slice
+   */
+  TokenStoreSlice removeExpiredAccessTokens(String afterKey, int sliceSize);
+
+  /**
+   * Removes expired refresh tokens from a slice of the store. Works like
+   * {@link #removeExpiredAccessTokens(String, int)}.
+   *
+   * @param afterKey  the key after which the slice starts, or null to start from the beginning
+   * @param sliceSize the maximum number of tokens in the slice
+   * @return the removed tokens and the position of the slice
+   */
+  TokenStoreSlice removeExpiredRefreshTokens(String afterKey, int sliceSize);
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.springframework.security.oauth2.provider.token.AccessTokenConverter.JTI;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+/**
+ * Replaces the value of user access tokens with a JWT signed by {@link JwtSigningKey}. The JWT
+ * carries the same claims as the check_token response, and the original token value is kept
+ * in the "jti" claim. Tokens granted to clients alone (service tokens and API keys) and refresh
+ * tokens are left opaque.
+ */
+public class JwtAccessTokenEnhancer implements TokenEnhancer {
+  private final AccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+  private final JsonParser jsonParser = JsonParserFactory.create();
+
+  private final JwtSigningKey signingKey;
+
+  public JwtAccessTokenEnhancer(JwtSigningKey signingKey) {
+    this.signingKey = signingKey;
+  }
+
+  @Override
+  public OAuth2AccessToken enhance(OAuth2AccessToken accessToken,
+                                   OAuth2Authentication authentication) {
+    if (authentication.isClientOnly()) {
+      return accessToken;
+    }
+
+    Map<String, Object> additionalInfo = new LinkedHashMap<>(
+        accessToken.getAdditionalInformation());
+    additionalInfo.put(JTI, accessToken.getValue());
+
+    DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(accessToken);
+    result.setAdditionalInformation(additionalInfo);
+    result.setValue(encode(result, authentication));
+
+    return result;
+  }
+
+  private String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    String content = jsonParser
+        .formatMap(accessTokenConverter.convertAccessToken(accessToken, authentication));
+
+    return JwtHelper
+        .encode(content, signingKey.getSigner(), ImmutableMap.of("kid", signingKey.getKeyId()))
+        .getEncoded();
+  }
+
+}
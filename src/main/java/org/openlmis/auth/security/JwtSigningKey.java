@@ -0,0 +1,150 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.jwt.crypto.sign.Signer;
+
+/**
+ * RSA key pair used to sign JWT access tokens. The public part is published as a JSON Web Key,
+ * so other services can verify tokens without calling the check_token endpoint.
+ */
+public final class JwtSigningKey {
+  static final String ALGORITHM = "RS256";
+
+  private static final String KEY_TYPE = "RSA";
+  private static final int GENERATED_KEY_SIZE = 2048;
+
+  private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+  private final String keyId;
+  private final RSAPrivateCrtKey privateKey;
+  private final RSAPublicKey publicKey;
+
+  private JwtSigningKey(String keyId, RSAPrivateCrtKey privateKey) {
+    try {
+      this.privateKey = privateKey;
+      this.publicKey = (RSAPublicKey) KeyFactory
+          .getInstance(KEY_TYPE)
+          .generatePublic(new RSAPublicKeySpec(
+              privateKey.getModulus(), privateKey.getPublicExponent()));
+      this.keyId = StringUtils.isBlank(keyId) ? thumbprint() : keyId;
+    } catch (GeneralSecurityException exp) {
+      throw new IllegalStateException("Could not derive the public key for JWT signing", exp);
+    }
+  }
+
+  /**
+   * Creates a signing key from a PKCS#8 RSA private key in PEM format.
+   *
+   * @param pem   the private key, with or without the BEGIN/END lines.
+   * @param keyId the key identifier sent in the "kid" header; derived from the key when blank.
+   */
+  public static JwtSigningKey fromPem(String pem, String keyId) {
+    String encoded = pem
+        .replaceAll("-----(BEGIN|END) PRIVATE KEY-----", "")
+        .replaceAll("\\\\n|\\s", "");
+
+    try {
+      PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Base64.getDecoder().decode(encoded));
+      return new JwtSigningKey(keyId,
+          (RSAPrivateCrtKey) KeyFactory.getInstance(KEY_TYPE).generatePrivate(spec));
+    } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException exp) {
+      throw new IllegalStateException("The JWT signing key is not a PKCS#8 RSA private key", exp);
+    }
+  }
+
+  /**
+   * Generates a new random signing key. Tokens signed with it can only be verified for as long
+   * as this instance of the service is running.
+   */
+  public static JwtSigningKey generate(String keyId) {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance(KEY_TYPE);
+      generator.initialize(GENERATED_KEY_SIZE);
+
+      return new JwtSigningKey(keyId, (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate());
+    } catch (GeneralSecurityException exp) {
+      throw new IllegalStateException("Could not generate the JWT signing key", exp);
+    }
+  }
+
+  public String getKeyId() {
+    return keyId;
+  }
+
+  public Signer getSigner() {
+    return new RsaSigner(privateKey);
+  }
+
+  public SignatureVerifier getVerifier() {
+    return new RsaVerifier(publicKey);
+  }
+
+  /**
+   * Returns the public part of the key as a JSON Web Key (RFC 7517).
+   */
+  public Map<String, Object> toJwk() {
+    Map<String, Object> jwk = new LinkedHashMap<>();
+    jwk.put("kty", KEY_TYPE);
+    jwk.put("use", "sig");
+    jwk.put("alg", ALGORITHM);
+    jwk.put("kid", keyId);
+    jwk.put("n", encode(publicKey.getModulus()));
+    jwk.put("e", encode(publicKey.getPublicExponent()));
+
+    return jwk;
+  }
+
+  // RFC 7638 thumbprint, so the key identifier changes together with the key
+  private String thumbprint() throws GeneralSecurityException {
+    String members = "{\"e\":\"" + encode(publicKey.getPublicExponent())
+        + "\",\"kty\":\"" + KEY_TYPE
+        + "\",\"n\":\"" + encode(publicKey.getModulus()) + "\"}";
+
+    return BASE64_URL.encodeToString(
+        MessageDigest.getInstance("SHA-256").digest(members.getBytes(UTF_8)));
+  }
+
+  private static String encode(BigInteger value) {
+    byte[] bytes = value.toByteArray();
+
+    // JWK integers are unsigned, so the sign byte added by BigInteger has to be dropped
+    if (bytes.length > 1 && bytes[0] == 0) {
+      bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+    }
+
+    return BASE64_URL.encodeToString(bytes);
+  }
+}
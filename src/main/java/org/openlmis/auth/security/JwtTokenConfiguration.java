@@ -0,0 +1,67 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enabled when access tokens are issued as signed JWTs (token.format=jwt).
+ */
+@Configuration
+@ConditionalOnProperty(name = "token.format", havingValue = "jwt")
+public class JwtTokenConfiguration {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JwtTokenConfiguration.class);
+
+  @Value("${token.jwt.privateKey}")
+  private String privateKey;
+
+  @Value("${token.jwt.keyId}")
+  private String keyId;
+
+  @Value("${token.jwt.generateKey}")
+  private boolean generateKey;
+
+  /**
+   * Loads the configured JWT signing key. Every instance of the service has to sign tokens with
+   * the same key, so the service doesn't start without one, unless generating a random key is
+   * allowed explicitly for a single instance used in development. Tokens signed with a generated
+   * key can't be verified by other instances of the service or after restart.
+   *
+   * @return the key used to sign access tokens
+   */
+  @Bean
+  public JwtSigningKey jwtSigningKey() {
+    if (StringUtils.isBlank(privateKey)) {
+      if (!generateKey) {
+        throw new IllegalStateException("No JWT signing key has been configured. Set "
+            + "TOKEN_JWT_PRIVATE_KEY, or TOKEN_JWT_GENERATE_KEY for a single development instance");
+      }
+
+      LOGGER.warn("No JWT signing key has been configured, a temporary key will be generated. "
+          + "Tokens signed with it can't be verified by other instances of the service");
+      return JwtSigningKey.generate(keyId);
+    }
+
+    return JwtSigningKey.fromPem(privateKey, keyId);
+  }
+}
@@ -17,10 +17,14 @@ package org.openlmis.auth.security;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.UUID;
 import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.domain.User;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
 import org.openlmis.auth.repository.UnsuccessfulAuthenticationAttemptRepository;
 import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.TokenRevocationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.LockedException;
@@ -45,61 +49,109 @@ public class OlmisAuthenticationProvider extends DaoAuthenticationProvider {
   @Autowired
   private UnsuccessfulAuthenticationAttemptRepository attemptCounterRepository;
 
+  @Autowired
+  private TokenRevocationService tokenRevocationService;
+
   /**
-   * Wraps the attempt in one transaction so the lock taken below is held across the whole
-   * lockout-state read-modify-write. noRollbackFor is required because a failed login throws an
+   * Wraps the attempt in one transaction, so the changes of the counter and of the lockout state
+   * are committed together. noRollbackFor is required because a failed login throws an
    * AuthenticationException after incrementing the counter - without it the counter (and lockout)
-   * would be rolled back. Adds locking only; does not change the lockout logic.
+   * would be rolled back. When the password can't be checked because the server is too busy, the
+   * token endpoint returns the temporarily_unavailable error with the 503 status.
    */
   @Override
   @Transactional(noRollbackFor = AuthenticationException.class)
   public Authentication authenticate(Authentication authentication) throws AuthenticationException {
-    return super.authenticate(authentication);
+    try {
+      return super.authenticate(authentication);
+    } catch (ServiceUnavailableMessageException ex) {
+      throw new TemporarilyUnavailableException(
+          "The server is busy right now. Please try again later.", ex);
+    }
   }
 
+  /**
+   * Checks the lockout state of the user and the password. No row is locked up front: the counter
+   * is changed with single atomic statements, and only the lockout flag of the user row is written
+   * when the lockout state flips, so a password reset at the same time is not overwritten. A
+   * successful login of a user without unsuccessful attempts writes nothing.
+   */
   @Override
   protected void additionalAuthenticationChecks(UserDetails userDetails,
       UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
     User user = userRepository.findOneByUsernameIgnoreCase(userDetails.getUsername());
-    // pessimistic write lock to serialize with a concurrent administrative unlock of this user
-    user = userRepository.findByIdForUpdate(user.getId()).orElse(user);
-    UnsuccessfulAuthenticationAttempt counter = attemptCounterRepository
-        .findByUserId(user.getId())
-        .orElse(new UnsuccessfulAuthenticationAttempt(user));
-    boolean lockoutExpired =
-        Duration.between(counter.getLastUnsuccessfulAuthenticationAttemptDate(),
-            ZonedDateTime.now()).getSeconds() > lockoutTime;
+    Optional<UnsuccessfulAuthenticationAttempt> counter =
+        attemptCounterRepository.findByUserId(user.getId());
+    boolean lockoutExpired = counter
+        .map(attempt -> Duration.between(attempt.getLastUnsuccessfulAuthenticationAttemptDate(),
+            ZonedDateTime.now()).getSeconds() > lockoutTime)
+        .orElse(true);
+    int attempts = counter
+        .map(UnsuccessfulAuthenticationAttempt::getAttemptCounter)
+        .orElse(0);
 
     if (user.isLockedOut() && !lockoutExpired) {
       throw new LockedException("Too many failed login attempts. "
           + "You can't access this page right now. Please try again later.");
     } else if (user.isLockedOut()) {
-      user.setLockedOut(false);
-      counter.resetCounter();
-      attemptCounterRepository.save(counter);
-      userRepository.save(user);
-    } else if (lockoutExpired && counter.getAttemptCounter() > 0) {
-      counter.resetCounter();
-      attemptCounterRepository.save(counter);
+      attemptCounterRepository.resetCounter(user.getId());
+      userRepository.updateLockedOut(user.getId(), false);
+      attempts = 0;
     }
 
     try {
       super.additionalAuthenticationChecks(userDetails, authentication);
-      if (counter.getAttemptCounter() > 0) {
-        counter.resetCounter();
-        attemptCounterRepository.save(counter);
-      }
+    } catch (ServiceUnavailableMessageException ex) {
+      // the password was not checked at all, so this is not an unsuccessful attempt
+      throw ex;
     } catch (Exception ex) {
-      counter.incrementCounter();
+      registerUnsuccessfulAttempt(user);
+      throw ex;
+    }
+
+    if (attempts > 0) {
+      attemptCounterRepository.resetCounter(user.getId());
+    }
+  }
 
-      if (counter.getAttemptCounter() >= maxUnsuccessfulAuthAttempts) {
-        user.setLockedOut(true);
-        userRepository.save(user);
+  /**
+   * The password was already verified here, so when its upgrade to the current hashing parameters
+   * can't be hashed because the server is too busy, the user is still logged in and the password
+   * is rehashed on one of the next logins.
+   */
+  @Override
+  protected Authentication createSuccessAuthentication(Object principal,
+      Authentication authentication, UserDetails user) {
+    try {
+      return super.createSuccessAuthentication(principal, authentication, user);
+    } catch (ServiceUnavailableMessageException ex) {
+      UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+          principal, authentication.getCredentials(), user.getAuthorities());
+      result.setDetails(authentication.getDetails());
+
+      return result;
+    }
+  }
+
+  private void registerUnsuccessfulAttempt(User user) {
+    int attempts = attemptCounterRepository
+        .registerUnsuccessfulAttempt(UUID.randomUUID(), user.getId(), lockoutTime);
+
+    // a locked out user gets here only after the lockout expired and the flag was cleared above
+    if (attempts >= maxUnsuccessfulAuthAttempts) {
+      boolean lockedOut = userRepository.lockOut(user.getId()) > 0;
+
+      // someone is guessing the password, so sessions opened with it must end as well - but only
+      // once, when the user gets locked out, and not with lockout disabled (the default), where
+      // any failed login would log the user out
+      if (lockedOut && isLockoutEnabled()) {
+        tokenRevocationService.revokeUserTokens(user.getUsername());
       }
-      attemptCounterRepository.save(counter);
-      throw ex;
     }
+  }
 
+  private boolean isLockoutEnabled() {
+    return maxUnsuccessfulAuthAttempts > 0 && lockoutTime > 0;
   }
 
 }
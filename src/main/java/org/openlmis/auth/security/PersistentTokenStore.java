@@ -0,0 +1,255 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import lombok.AllArgsConstructor;
+import org.openlmis.auth.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+
+/**
+ * Token store backed by the auth.oauth_access_token and auth.oauth_refresh_token tables. The
+ * statements of {@link JdbcTokenStore} are adjusted to the column names used in this service.
+ */
+public class PersistentTokenStore extends JdbcTokenStore implements ExtendedTokenStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PersistentTokenStore.class);
+
+  private static final String ACCESS_TOKEN_COLUMNS = "tokenid, token";
+  private static final String ACCESS_TOKEN_AUTHENTICATION_COLUMNS = "tokenid, authentication";
+
+  private static final String ACCESS_TOKEN_TABLE = "auth.oauth_access_token";
+  private static final String REFRESH_TOKEN_TABLE = "auth.oauth_refresh_token";
+
+  private static final String SELECT_ACCESS_TOKENS = "SELECT " + ACCESS_TOKEN_COLUMNS
+      + " FROM " + ACCESS_TOKEN_TABLE;
+
+  private static final String UPDATE_ACCESS_TOKEN_SQL = "UPDATE " + ACCESS_TOKEN_TABLE
+      + " SET token = ? WHERE tokenid = ?";
+
+  private static final String INSERT_REFRESH_TOKEN_SQL = "INSERT INTO " + REFRESH_TOKEN_TABLE
+      + " (tokenid, token, authentication, username) VALUES (?, ?, ?, ?)";
+
+  private static final String DELETE_ACCESS_TOKENS_BY_USERNAME_SQL = "DELETE FROM "
+      + ACCESS_TOKEN_TABLE + " WHERE username = ? RETURNING token, refreshtoken";
+
+  private static final String DELETE_REFRESH_TOKENS_BY_USERNAME_SQL = "DELETE FROM "
+      + REFRESH_TOKEN_TABLE + " WHERE username = ?";
+
+  private static final String SELECT_SLICE_SQL = "SELECT tokenid, token,"
+      + " COALESCE(octet_length(token), 0) + COALESCE(octet_length(authentication), 0)"
+      + " FROM %s WHERE tokenid > ? ORDER BY tokenid LIMIT ?";
+
+  private static final String DELETE_TOKEN_SQL = "DELETE FROM %s WHERE tokenid = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * Creates a new instance of {@link PersistentTokenStore} that uses the given data source.
+   */
+  public PersistentTokenStore(DataSource dataSource) {
+    super(dataSource);
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+    setInsertAccessTokenSql("INSERT INTO " + ACCESS_TOKEN_TABLE
+        + " (tokenid, token, authenticationid, username, clientid, authentication, refreshtoken)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+    setSelectAccessTokenSql(SELECT_ACCESS_TOKENS + " WHERE tokenid = ?");
+    setSelectAccessTokenAuthenticationSql("SELECT " + ACCESS_TOKEN_AUTHENTICATION_COLUMNS
+        + " FROM " + ACCESS_TOKEN_TABLE + " WHERE tokenid = ?");
+    setSelectAccessTokenFromAuthenticationSql(SELECT_ACCESS_TOKENS
+        + " WHERE authenticationid = ?");
+    setSelectAccessTokensFromUserNameAndClientIdSql(SELECT_ACCESS_TOKENS
+        + " WHERE username = ? AND clientid = ?");
+    setSelectAccessTokensFromUserNameSql(SELECT_ACCESS_TOKENS + " WHERE username = ?");
+    setSelectAccessTokensFromClientIdSql(SELECT_ACCESS_TOKENS + " WHERE clientid = ?");
+    setDeleteAccessTokenSql("DELETE FROM " + ACCESS_TOKEN_TABLE + " WHERE tokenid = ?");
+    setDeleteAccessTokenFromRefreshTokenSql("DELETE FROM " + ACCESS_TOKEN_TABLE
+        + " WHERE refreshtoken = ?");
+
+    setSelectRefreshTokenSql("SELECT tokenid, token FROM " + REFRESH_TOKEN_TABLE
+        + " WHERE tokenid = ?");
+    setSelectRefreshTokenAuthenticationSql("SELECT tokenid, authentication FROM "
+        + REFRESH_TOKEN_TABLE + " WHERE tokenid = ?");
+    setDeleteRefreshTokenSql("DELETE FROM " + REFRESH_TOKEN_TABLE + " WHERE tokenid = ?");
+  }
+
+  /**
+   * Serializes the authentication with a copy of the user that has no password hash, so the hash
+   * is not stored with every token of the user.
+   */
+  @Override
+  protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
+    Authentication userAuthentication = authentication.getUserAuthentication();
+
+    if (null == userAuthentication || !(userAuthentication.getPrincipal() instanceof User)) {
+      return super.serializeAuthentication(authentication);
+    }
+
+    User user = (User) userAuthentication.getPrincipal();
+    UsernamePasswordAuthenticationToken storedUserAuthentication =
+        new UsernamePasswordAuthenticationToken(user.withoutPassword(), null,
+            userAuthentication.getAuthorities());
+    storedUserAuthentication.setDetails(userAuthentication.getDetails());
+
+    OAuth2Authentication stored = new OAuth2Authentication(authentication.getOAuth2Request(),
+        storedUserAuthentication);
+    stored.setDetails(authentication.getDetails());
+
+    return super.serializeAuthentication(stored);
+  }
+
+  @Override
+  public void updateAccessTokens(Collection<OAuth2AccessToken> tokens) {
+    jdbcTemplate.batchUpdate(UPDATE_ACCESS_TOKEN_SQL, tokens, tokens.size(),
+        (ps, token) -> {
+          ps.setBytes(1, serializeAccessToken(token));
+          ps.setString(2, extractTokenKey(token.getValue()));
+        });
+  }
+
+  /**
+   * Stores the refresh token together with the name of the user it has been granted to, so it
+   * can be removed with the other tokens of the user.
+   */
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken,
+      OAuth2Authentication authentication) {
+    jdbcTemplate.update(INSERT_REFRESH_TOKEN_SQL, ps -> {
+      ps.setString(1, extractTokenKey(refreshToken.getValue()));
+      ps.setBytes(2, serializeRefreshToken(refreshToken));
+      ps.setBytes(3, serializeAuthentication(authentication));
+      ps.setString(4, authentication.isClientOnly() ? null : authentication.getName());
+    });
+  }
+
+  @Override
+  public List<String> removeTokensByUserName(String userName) {
+    List<RemovedAccessToken> removed = jdbcTemplate.query(DELETE_ACCESS_TOKENS_BY_USERNAME_SQL,
+        new Object[]{userName},
+        (rs, rowNum) -> new RemovedAccessToken(rs.getBytes(1), rs.getString(2)));
+
+    List<String> refreshTokenKeys = removed
+        .stream()
+        .map(token -> token.refreshTokenKey)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+
+    // refresh tokens stored before they had the username are found by their access tokens
+    jdbcTemplate.batchUpdate(String.format(DELETE_TOKEN_SQL, REFRESH_TOKEN_TABLE),
+        refreshTokenKeys, refreshTokenKeys.size(), (ps, key) -> ps.setString(1, key));
+    jdbcTemplate.update(DELETE_REFRESH_TOKENS_BY_USERNAME_SQL, userName);
+
+    return removed
+        .stream()
+        .map(this::getValue)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public TokenStoreSlice removeExpiredAccessTokens(String afterKey, int sliceSize) {
+    return removeExpiredTokens(ACCESS_TOKEN_TABLE, afterKey, sliceSize,
+        content -> deserializeAccessToken(content).isExpired());
+  }
+
+  @Override
+  public TokenStoreSlice removeExpiredRefreshTokens(String afterKey, int sliceSize) {
+    return removeExpiredTokens(REFRESH_TOKEN_TABLE, afterKey, sliceSize,
+        content -> isExpired(deserializeRefreshToken(content)));
+  }
+
+  private TokenStoreSlice removeExpiredTokens(String table, String afterKey, int sliceSize,
+      Predicate<byte[]> isExpired) {
+    List<StoredToken> slice = jdbcTemplate.query(String.format(SELECT_SLICE_SQL, table),
+        new Object[]{Objects.toString(afterKey, ""), sliceSize},
+        (rs, rowNum) -> new StoredToken(rs.getString(1), rs.getBytes(2), rs.getLong(3)));
+
+    List<StoredToken> expired = slice
+        .stream()
+        .filter(token -> isExpired(token, isExpired))
+        .collect(Collectors.toList());
+
+    jdbcTemplate.batchUpdate(String.format(DELETE_TOKEN_SQL, table), expired, expired.size(),
+        (ps, token) -> ps.setString(1, token.key));
+
+    String lastKey = slice.size() < sliceSize ? null : slice.get(slice.size() - 1).key;
+    long removedBytes = expired.stream().mapToLong(token -> token.size).sum();
+
+    return new TokenStoreSlice(lastKey, slice.size(), expired.size(), removedBytes);
+  }
+
+  private boolean isExpired(StoredToken token, Predicate<byte[]> isExpired) {
+    try {
+      return null == token.content || isExpired.test(token.content);
+    } catch (IllegalArgumentException exp) {
+      // like JdbcTokenStore does on read, a token that can't be deserialized is removed
+      LOGGER.warn("Failed to deserialize token {}, it will be removed", token.key, exp);
+      return true;
+    }
+  }
+
+  private boolean isExpired(OAuth2RefreshToken token) {
+    if (!(token instanceof ExpiringOAuth2RefreshToken)) {
+      return false;
+    }
+
+    Date expiration = ((ExpiringOAuth2RefreshToken) token).getExpiration();
+    return null != expiration && expiration.before(new Date());
+  }
+
+  private Optional<String> getValue(RemovedAccessToken token) {
+    try {
+      return Optional
+          .ofNullable(token.content)
+          .map(this::deserializeAccessToken)
+          .map(OAuth2AccessToken::getValue);
+    } catch (IllegalArgumentException exp) {
+      LOGGER.warn("Failed to deserialize removed access token", exp);
+      return Optional.empty();
+    }
+  }
+
+  @AllArgsConstructor
+  private static final class RemovedAccessToken {
+    private final byte[] content;
+    private final String refreshTokenKey;
+  }
+
+  @AllArgsConstructor
+  private static final class StoredToken {
+    private final String key;
+    private final byte[] content;
+    private final long size;
+  }
+
+}
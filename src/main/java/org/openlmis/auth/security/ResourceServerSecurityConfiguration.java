@@ -82,6 +82,7 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
             "/actuator/prometheus",
             "/api/users/auth/forgotPassword",
             "/api/users/auth/changePassword",
+            "/api/oauth/token_keys",
             "/webjars/**",
             "/static/auth/docs/index.html",
             "/generated/api-definition.json"
@@ -15,7 +15,10 @@
 
 package org.openlmis.auth.security;
 
+import javax.sql.DataSource;
+import org.openlmis.auth.service.PasswordHashingService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -27,14 +30,12 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
 
 @Configuration
 @EnableWebSecurity
@@ -43,9 +44,31 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
   @Autowired
   private UserDetailsService userDetailsService;
 
+  @Autowired
+  private UserDetailsPasswordService userDetailsPasswordService;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private PasswordHashingService passwordHashingService;
+
+  @Value("${token.store.cache.maxSize}")
+  private long tokenStoreCacheMaxSize;
+
+  @Value("${token.store.cache.ttlSeconds}")
+  private long tokenStoreCacheTtlSeconds;
+
+  /**
+   * Initializes the token store. Tokens are kept in the database, so they survive a restart and
+   * are shared by all instances of the service, and recently used tokens are cached in memory.
+   *
+   * @return the token store
+   */
   @Bean
-  public TokenStore tokenStore() {
-    return new InMemoryTokenStore();
+  public ExtendedTokenStore tokenStore() {
+    return new CachingTokenStore(new PersistentTokenStore(dataSource),
+        tokenStoreCacheMaxSize, tokenStoreCacheTtlSeconds);
   }
 
   @Override
@@ -84,7 +107,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
   }
 
   /**
-   * Initializes AuthenticationProvider bean with userDetailsService and BCryptPasswordEncoder.
+   * Initializes AuthenticationProvider bean with userDetailsService and a password encoder that
+   * checks passwords on the bounded pool of {@link PasswordHashingService}. Passwords hashed with
+   * outdated parameters are rehashed by userDetailsPasswordService after a successful login.
    *
    * @return initialized AuthenticationProvider
    */
@@ -92,7 +117,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
   public AuthenticationProvider authenticator() {
     DaoAuthenticationProvider provider = new OlmisAuthenticationProvider();
     provider.setUserDetailsService(userDetailsService);
-    provider.setPasswordEncoder(new BCryptPasswordEncoder());
+    provider.setPasswordEncoder(passwordHashingService.getPasswordEncoder());
+    provider.setUserDetailsPasswordService(userDetailsPasswordService);
     return provider;
   }
   
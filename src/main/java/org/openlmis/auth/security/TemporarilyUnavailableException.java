@@ -0,0 +1,41 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Signals that a token can't be issued right now because the server is too busy. It is returned
+ * by the token endpoint as the temporarily_unavailable error with the 503 status.
+ */
+public class TemporarilyUnavailableException extends OAuth2Exception {
+
+  public TemporarilyUnavailableException(String msg, Throwable cause) {
+    super(msg, cause);
+  }
+
+  @Override
+  public String getOAuth2ErrorCode() {
+    return "temporarily_unavailable";
+  }
+
+  @Override
+  public int getHttpErrorCode() {
+    return HttpStatus.SERVICE_UNAVAILABLE.value();
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the expiration date of used access tokens forward. The expiration date is only extended
+ * once the given fraction of the validity time has passed since the last extension, and extended
+ * tokens are written to the token store in batches in the background, so reading a token does
+ * not have to write to the store.
+ */
+@Component
+public class TokenExpirationExtender {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TokenExpirationExtender.class);
+
+  private static final String EXTENSIONS = "auth.token.expiration.extensions";
+  private static final String RESULT = "result";
+
+  @Autowired
+  private TokenStore tokenStore;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("#{${token.validitySeconds} * 1000}")
+  private long validityMs;
+
+  @Value("${token.expiration.extensionFraction}")
+  private double extensionFraction;
+
+  @Value("${token.expiration.flushBatchSize}")
+  private int flushBatchSize;
+
+  private final Map<String, OAuth2AccessToken> pending = new ConcurrentHashMap<>();
+
+  private Counter written;
+  private Counter suppressed;
+  private Counter coalesced;
+  private Counter failed;
+
+  /**
+   * Initiates metrics.
+   */
+  @PostConstruct
+  public void init() {
+    written = meterRegistry.counter(EXTENSIONS, RESULT, "written");
+    suppressed = meterRegistry.counter(EXTENSIONS, RESULT, "suppressed");
+    coalesced = meterRegistry.counter(EXTENSIONS, RESULT, "coalesced");
+    failed = meterRegistry.counter(EXTENSIONS, RESULT, "failed");
+
+    meterRegistry.gauge("auth.token.expiration.pending", pending, Map::size);
+  }
+
+  /**
+   * Sets the expiration date of the given token to the full validity time from now, unless it
+   * has been extended recently. An extended token is queued to be written to the token store.
+   *
+   * @param token the valid access token that is being used
+   */
+  public void extend(DefaultOAuth2AccessToken token) {
+    long now = System.currentTimeMillis();
+    long elapsedMs = validityMs - (token.getExpiration().getTime() - now);
+
+    if (elapsedMs < validityMs * extensionFraction) {
+      suppressed.increment();
+      return;
+    }
+
+    token.setExpiration(new Date(now + validityMs));
+
+    // a store that keeps tokens outside of the heap has to be told about the new expiration
+    if (tokenStore instanceof ExtendedTokenStore
+        && null != pending.put(token.getValue(), token)) {
+      coalesced.increment();
+    }
+  }
+
+  /**
+   * Writes the queued tokens to the token store.
+   */
+  @Scheduled(fixedDelayString = "${token.expiration.flushIntervalMillis}")
+  @PreDestroy
+  public void flush() {
+    List<OAuth2AccessToken> batch = new ArrayList<>(flushBatchSize);
+
+    for (String value : pending.keySet()) {
+      OAuth2AccessToken token = pending.remove(value);
+
+      if (null != token) {
+        batch.add(token);
+      }
+
+      if (batch.size() >= flushBatchSize) {
+        write(batch);
+        batch = new ArrayList<>(flushBatchSize);
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      write(batch);
+    }
+  }
+
+  private void write(List<OAuth2AccessToken> batch) {
+    try {
+      ((ExtendedTokenStore) tokenStore).updateAccessTokens(batch);
+      written.increment(batch.size());
+    } catch (RuntimeException exp) {
+      // the tokens keep the new expiration date in memory and will be extended again later
+      LOGGER.warn("Could not write expiration date of {} access tokens", batch.size(), exp);
+      failed.increment(batch.size());
+    }
+  }
+
+}
@@ -15,6 +15,7 @@
 
 package org.openlmis.auth.security;
 
+import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +29,7 @@ import org.springframework.security.oauth2.config.annotation.web.configuration.E
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 
 @Configuration
@@ -46,12 +48,33 @@ public class TokenServicesConfiguration {
   @Autowired
   private AuthenticationManager authenticationManager;
 
+  @Autowired
+  private TokenExpirationExtender tokenExpirationExtender;
+
+  @Autowired(required = false)
+  private JwtSigningKey jwtSigningKey;
+
   @Value("${token.validitySeconds}")
   private Integer tokenValiditySeconds;
 
+  /**
+   * Token enhancer bean initializer. When a JWT signing key is available, user access tokens are
+   * additionally turned into signed JWTs.
+   * @return token enhancer
+   */
   @Bean
   public TokenEnhancer tokenEnhancer() {
-    return new AccessTokenEnhancer();
+    if (null == jwtSigningKey) {
+      return new AccessTokenEnhancer();
+    }
+
+    LOGGER.info("Issuing user access tokens as JWTs signed with key {}", jwtSigningKey.getKeyId());
+
+    TokenEnhancerChain chain = new TokenEnhancerChain();
+    chain.setTokenEnhancers(Arrays.asList(
+        new AccessTokenEnhancer(), new JwtAccessTokenEnhancer(jwtSigningKey)));
+
+    return chain;
   }
 
   /**
@@ -63,8 +86,9 @@ public class TokenServicesConfiguration {
   public DefaultTokenServices defaultTokenServices() {
     LOGGER.debug("Using {} seconds as the token validity time", tokenValiditySeconds);
 
-    DefaultTokenServices tokenServices = new CustomTokenServices();
+    CustomTokenServices tokenServices = new CustomTokenServices();
     tokenServices.setTokenStore(tokenStore);
+    tokenServices.setTokenExpirationExtender(tokenExpirationExtender);
     tokenServices.setSupportRefreshToken(true);
     tokenServices.setClientDetailsService(clientDetailsService);
     tokenServices.setTokenEnhancer(tokenEnhancer());
@@ -0,0 +1,53 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The result of removing expired tokens from a slice of the token store.
+ */
+@Getter
+@AllArgsConstructor
+public final class TokenStoreSlice {
+
+  /**
+   * The key of the last token in the slice, from which the next slice starts. It is null when
+   * the slice reached the end of the store.
+   */
+  private final String lastKey;
+
+  /**
+   * The number of tokens in the slice.
+   */
+  private final int size;
+
+  /**
+   * The number of expired tokens that have been removed.
+   */
+  private final int removed;
+
+  /**
+   * The estimated number of bytes taken by the removed tokens.
+   */
+  private final long removedBytes;
+
+  public boolean isLast() {
+    return null == lastKey;
+  }
+
+}
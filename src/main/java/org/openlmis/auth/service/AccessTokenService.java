@@ -19,13 +19,25 @@ import static org.openlmis.auth.i18n.MessageKeys.ERROR_TOKEN_REQUIRED;
 import static org.springframework.security.oauth2.common.util.OAuth2Utils.GRANT_TYPE;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.util.UuidUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2RequestFactory;
@@ -34,10 +46,12 @@ import org.springframework.security.oauth2.provider.TokenRequest;
 import org.springframework.security.oauth2.provider.client.ClientCredentialsTokenGranter;
 import org.springframework.security.oauth2.provider.request.DefaultOAuth2RequestFactory;
 import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.stereotype.Service;
 
 @Service
 public class AccessTokenService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessTokenService.class);
 
   @Autowired
   @Qualifier("clientDetailsServiceImpl")
@@ -47,9 +61,26 @@ public class AccessTokenService {
   @Qualifier("defaultTokenServices")
   private DefaultTokenServices defaultTokenServices;
 
+  @Autowired
+  private TokenStore tokenStore;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${auth.server.serviceToken.refreshAheadSeconds}")
+  private long refreshAheadSeconds;
+
   private TokenGranter tokenGranter;
   private OAuth2RequestFactory requestFactory;
 
+  private final Map<String, OAuth2AccessToken> serviceTokens = new ConcurrentHashMap<>();
+  private final Set<String> refreshedClients = ConcurrentHashMap.newKeySet();
+  private ExecutorService refreshExecutor;
+
+  private Counter hits;
+  private Counter misses;
+  private Counter refreshes;
+
   /**
    * Initiates internal fields.
    */
@@ -59,24 +90,113 @@ public class AccessTokenService {
     tokenGranter = new ClientCredentialsTokenGranter(
         defaultTokenServices, clientDetailsService, requestFactory
     );
+
+    refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("service-token-refresh-%d")
+        .setDaemon(true)
+        .build());
+
+    hits = meterRegistry.counter("auth.service.token.requests", "result", "hit");
+    misses = meterRegistry.counter("auth.service.token.requests", "result", "miss");
+    refreshes = meterRegistry.counter("auth.service.token.refreshes");
+  }
+
+  /**
+   * Stops the background refresh of service tokens.
+   */
+  @PreDestroy
+  public void destroy() {
+    refreshExecutor.shutdownNow();
   }
 
   /**
    * Obtains token based on client ID and secret.
    */
   public UUID obtainToken(String clientId) {
+    return toUuid(grant(clientId));
+  }
+
+  /**
+   * Obtains token that should be used by the service to communicate with other services. The
+   * token is granted once and reused for as long as it is valid and still in the token store, so
+   * a token that was revoked or removed from the store is replaced. A token that is about to expire
+   * is still returned, but it is also refreshed in the background, so the next call gets a token
+   * with a renewed expiration date.
+   */
+  public UUID obtainServiceToken(String clientId) {
+    OAuth2AccessToken token = serviceTokens.get(clientId);
+
+    if (isUsable(token)) {
+      hits.increment();
+    } else {
+      token = serviceTokens.compute(clientId, (key, current) -> {
+        if (isUsable(current)) {
+          hits.increment();
+          return current;
+        }
+
+        misses.increment();
+        return grant(key);
+      });
+    }
+
+    if (isAboutToExpire(token)) {
+      scheduleRefresh(clientId, token);
+    }
+
+    return toUuid(token);
+  }
+
+  private OAuth2AccessToken grant(String clientId) {
     Map<String, String> parameters = ImmutableMap.of(GRANT_TYPE, "client_credentials");
     ClientDetails authenticatedClient = clientDetailsService.loadClientByClientId(clientId);
 
     TokenRequest tokenRequest = requestFactory
         .createTokenRequest(parameters, authenticatedClient);
 
-    String token = tokenGranter
-        .grant(tokenRequest.getGrantType(), tokenRequest)
-        .getValue();
+    return tokenGranter.grant(tokenRequest.getGrantType(), tokenRequest);
+  }
+
+  private void scheduleRefresh(String clientId, OAuth2AccessToken token) {
+    if (!refreshedClients.add(clientId)) {
+      return;
+    }
+
+    refreshExecutor.execute(() -> {
+      try {
+        serviceTokens.put(clientId, refresh(clientId, token));
+        refreshes.increment();
+      } catch (RuntimeException exp) {
+        LOGGER.warn("Could not refresh service token for client {}", clientId, exp);
+      } finally {
+        refreshedClients.remove(clientId);
+      }
+    });
+  }
+
+  private OAuth2AccessToken refresh(String clientId, OAuth2AccessToken token) {
+    // reading the token through token services moves its expiration date forward
+    OAuth2AccessToken current = defaultTokenServices.readAccessToken(token.getValue());
+    return null == current || current.isExpired() ? grant(clientId) : current;
+  }
+
+  // the store keeps recently read tokens in memory, so checking it doesn't reach the database on
+  // every call, and a token removed on this instance is evicted from it at once
+  private boolean isUsable(OAuth2AccessToken token) {
+    return null != token
+        && !token.isExpired()
+        && null != tokenStore.readAccessToken(token.getValue());
+  }
+
+  private boolean isAboutToExpire(OAuth2AccessToken token) {
+    return null != token.getExpiration()
+        && !token.isExpired()
+        && token.getExpiresIn() <= refreshAheadSeconds;
+  }
 
+  private UUID toUuid(OAuth2AccessToken token) {
     return UuidUtil
-        .fromString(token)
+        .fromString(token.getValue())
         .orElseThrow(() -> new ValidationMessageException(ERROR_TOKEN_REQUIRED));
   }
 }
@@ -45,14 +45,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 @SuppressWarnings("PMD.TooManyMethods")
 public abstract class BaseCommunicationService<T> {
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-  protected RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  protected RestOperations restTemplate;
 
   @Autowired
   private AccessTokenService accessTokenService;
@@ -72,7 +72,7 @@ public abstract class BaseCommunicationService<T> {
   protected abstract Class<T[]> getArrayResultClass();
 
   protected String obtainAccessToken() {
-    return accessTokenService.obtainToken(clientId).toString();
+    return accessTokenService.obtainServiceToken(clientId).toString();
   }
 
   /**
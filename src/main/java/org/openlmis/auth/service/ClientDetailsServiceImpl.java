@@ -15,16 +15,30 @@
 
 package org.openlmis.auth.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import org.openlmis.auth.domain.Client;
 import org.openlmis.auth.repository.ClientRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
 import org.springframework.security.oauth2.provider.NoSuchClientException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * Loads OAuth2 clients. Clients are needed on every token request, so they are cached in memory.
+ * Code that saves or deletes a client has to call {@link #evict(String)}. Changes made by other
+ * instances of the service are seen after the cache entry expires.
+ */
 @Service
 @Primary
 public class ClientDetailsServiceImpl implements ClientDetailsService {
@@ -32,13 +46,67 @@ public class ClientDetailsServiceImpl implements ClientDetailsService {
   @Autowired
   private ClientRepository clientRepository;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${client.details.cache.maxSize}")
+  private long cacheMaxSize;
+
+  @Value("${client.details.cache.ttlSeconds}")
+  private long cacheTtlSeconds;
+
+  private Cache<String, ClientDetails> clients;
+
+  /**
+   * Creates the cache of clients.
+   */
+  @PostConstruct
+  public void init() {
+    clients = CacheBuilder.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    GuavaCacheMetrics.monitor(meterRegistry, clients, "client.details");
+  }
+
   @Override
   public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+    ClientDetails cached = clients.getIfPresent(clientId);
+
+    if (null != cached) {
+      return cached;
+    }
+
     Client client = clientRepository.findOneByClientId(clientId)
         .orElseThrow(() -> new NoSuchClientException(
             String.format("Client with clientId=%s was not found", clientId)));
 
-    return new org.openlmis.auth.domain.ClientDetails(client);
+    ClientDetails details = new org.openlmis.auth.domain.ClientDetails(client);
+    clients.put(clientId, details);
+
+    return details;
+  }
+
+  /**
+   * Removes the given client from the cache. If called in a transaction, the client is removed
+   * again after commit, so a concurrent request can't cache the state from before the change.
+   *
+   * @param clientId the id of a saved or deleted client
+   */
+  public void evict(String clientId) {
+    clients.invalidate(clientId);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              clients.invalidate(clientId);
+            }
+          });
+    }
   }
 
 }
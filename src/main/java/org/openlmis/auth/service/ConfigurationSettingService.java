@@ -44,6 +44,18 @@ public class ConfigurationSettingService {
   @Value("${consul.services.serviceTag}")
   private String consulServiceTag;
 
+  @Getter
+  @Value("${consul.watch.waitSeconds}")
+  private long consulWatchWaitSeconds;
+
+  @Getter
+  @Value("${consul.watch.retryMillis}")
+  private long consulWatchRetryMillis;
+
+  @Getter
+  @Value("${http.client.readTimeoutMs}")
+  private long httpClientReadTimeoutMs;
+
   public int getConsulPort() {
     return getInteger(consulPort);
   }
@@ -15,36 +15,18 @@
 
 package org.openlmis.auth.service;
 
-import static org.openlmis.auth.i18n.MessageKeys.ERROR_SEND_NOTIFICATION_FAILURE;
-
 import java.util.function.Function;
 import org.openlmis.auth.domain.ExpirationToken;
 import org.openlmis.auth.domain.User;
-import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
-import org.openlmis.auth.exception.ServerException;
-import org.openlmis.auth.i18n.ExposedMessageSource;
 import org.openlmis.auth.repository.ExpirationTokenRepository;
-import org.openlmis.auth.service.notification.NotificationService;
-import org.openlmis.auth.service.referencedata.UserReferenceDataService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.openlmis.auth.service.notification.NotificationOutbox;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.i18n.LocaleContextHolder;
-import org.springframework.web.client.RestClientException;
 
 public abstract class ExpirationTokenNotifier<T extends ExpirationToken> {
   public static final long TOKEN_VALIDITY_HOURS = 12;
 
-  private final Logger logger = LoggerFactory.getLogger(getClass());
-
   @Autowired
-  private UserReferenceDataService userReferenceDataService;
-
-  @Autowired
-  private NotificationService notificationService;
-
-  @Autowired
-  private ExposedMessageSource messageSource;
+  private NotificationOutbox notificationOutbox;
 
   T createExpirationToken(User user,
       ExpirationTokenRepository<T> repository, Function<User, T> creator) {
@@ -65,27 +47,11 @@ public abstract class ExpirationTokenNotifier<T extends ExpirationToken> {
     return repository.save(creator.apply(user));
   }
 
-  void sendEmail(User user, ExpirationToken token, String subjectKey, String bodyKey,
+  void queueEmail(User user, ExpirationToken token, String subjectKey, String bodyKey,
       String bodyUrl) {
-    UserMainDetailsDto referenceDataUser = userReferenceDataService.findOne(user.getId());
-
-    String[] bodyMsgArgs = {
-        referenceDataUser.getFirstName(),
-        referenceDataUser.getLastName(),
-        bodyUrl + token.getId().toString()
-    };
-    String[] subjectMsgArgs = {};
-
-    try {
-      notificationService.notify(
-          user,
-          messageSource.getMessage(subjectKey, subjectMsgArgs, LocaleContextHolder.getLocale()),
-          messageSource.getMessage(bodyKey, bodyMsgArgs, LocaleContextHolder.getLocale())
-      );
-    } catch (RestClientException exp) {
-      logger.warn("Can't send request to the notification service", exp);
-      throw new ServerException(exp, ERROR_SEND_NOTIFICATION_FAILURE);
-    }
+    // a new token replaces the old one, so does the email with its link
+    notificationOutbox.enqueue(user, token.getClass().getSimpleName() + ':' + user.getId(),
+        subjectKey, bodyKey, bodyUrl + token.getId().toString());
   }
 
 }
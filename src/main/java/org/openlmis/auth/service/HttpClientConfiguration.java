@@ -0,0 +1,110 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configures the HTTP client used to communicate with other services. Connections are pooled
+ * and kept alive between requests, the number of connections to a single service is limited and
+ * every request has connect and read timeouts, so a slow service can't hold on to request
+ * threads of the auth service indefinitely.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+  @Value("${http.client.maxConnections}")
+  private int maxConnections;
+
+  @Value("${http.client.maxConnectionsPerRoute}")
+  private int maxConnectionsPerRoute;
+
+  @Value("${http.client.connectTimeoutMs}")
+  private int connectTimeoutMs;
+
+  @Value("${http.client.readTimeoutMs}")
+  private int readTimeoutMs;
+
+  @Value("${http.client.connectionRequestTimeoutMs}")
+  private int connectionRequestTimeoutMs;
+
+  @Value("${http.client.idleTimeoutSeconds}")
+  private long idleTimeoutSeconds;
+
+  /**
+   * Creates the pool of connections to other services.
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager httpClientConnectionManager() {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+    return connectionManager;
+  }
+
+  /**
+   * Creates the HTTP client that takes connections from the pool. Connections that stayed idle
+   * for too long are closed by a background thread of the client.
+   */
+  @Bean
+  public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+    RequestConfig requestConfig = RequestConfig
+        .custom()
+        .setConnectTimeout(connectTimeoutMs)
+        .setSocketTimeout(readTimeoutMs)
+        .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+        .build();
+
+    return HttpClients
+        .custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Creates the rest template shared by all services that communicate with other services.
+   */
+  @Bean
+  public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+  }
+
+  /**
+   * Exports state of the connection pool to the metrics registry.
+   */
+  @Bean
+  public MeterBinder httpClientConnectionPoolMetrics(
+      PoolingHttpClientConnectionManager connectionManager) {
+    return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "outbound");
+  }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_SERVICE_BUSY;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hashes and verifies user passwords on a dedicated, bounded pool of threads. Password hashing is
+ * slow on purpose, so without a limit a spike of logins could use all CPU cores and starve every
+ * other request. When all threads are busy and the queue is full, the request is rejected with
+ * {@link ServiceUnavailableMessageException} instead of waiting.
+ *
+ * <p>New hashes are prefixed with the id of the scheme, like {@link DelegatingPasswordEncoder}
+ * does, so the scheme can be changed later. Hashes without the prefix are bcrypt hashes stored
+ * before. The bcrypt strength is configurable or, if a target time is set, calibrated at startup
+ * to the highest strength that hashes a password within that time on this machine. Hashes of
+ * another scheme or strength are reported by the encoder as needing an upgrade, so they are
+ * rehashed on the next successful login.
+ */
+@Service
+public class PasswordHashingService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHashingService.class);
+
+  static final String TIMER_NAME = "auth.password.hashing";
+  static final String BCRYPT = "bcrypt";
+  static final int MIN_CALIBRATED_STRENGTH = 8;
+  static final int MAX_CALIBRATED_STRENGTH = 16;
+  private static final int CALIBRATION_ROUNDS = 5;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${password.hashing.poolSize}")
+  private int poolSize;
+
+  @Value("${password.hashing.queueCapacity}")
+  private int queueCapacity;
+
+  @Value("${password.hashing.strength}")
+  private int strength;
+
+  @Value("${password.hashing.targetMillis}")
+  private long targetMillis;
+
+  private final PasswordEncoder passwordEncoder = new BoundedPasswordEncoder();
+
+  private PasswordEncoder delegate;
+  private ThreadPoolExecutor executor;
+
+  private Timer hashTimer;
+  private Timer verifyTimer;
+  private Counter rejections;
+
+  /**
+   * Creates the password encoder and the pool of threads and registers metrics. If the pool size
+   * is not set, one core is left for other requests.
+   */
+  @PostConstruct
+  public void init() {
+    int threads = poolSize > 0
+        ? poolSize
+        : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    int workFactor = targetMillis > 0 ? calibrate() : strength;
+    LOGGER.info("Hashing passwords with {} strength {}", BCRYPT, workFactor);
+    delegate = createEncoder(workFactor);
+    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("password-hashing-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+
+    hashTimer = Timer.builder(TIMER_NAME)
+        .tag("operation", "hash")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    verifyTimer = Timer.builder(TIMER_NAME)
+        .tag("operation", "verify")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    rejections = meterRegistry.counter("auth.password.hashing.rejections");
+    meterRegistry.gauge("auth.password.hashing.queue", executor, pool -> pool.getQueue().size());
+  }
+
+  /**
+   * Stops the pool of threads.
+   */
+  @PreDestroy
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Hashes the given raw password.
+   *
+   * @param rawPassword the password to hash
+   * @return the hashed password
+   * @throws ServiceUnavailableMessageException if there are too many passwords waiting
+   */
+  public String encode(CharSequence rawPassword) {
+    return execute(hashTimer, () -> delegate.encode(rawPassword));
+  }
+
+  /**
+   * Checks if the given raw password matches the hashed one.
+   *
+   * @param rawPassword     the password to check
+   * @param encodedPassword the stored hash
+   * @return true if the passwords match
+   * @throws ServiceUnavailableMessageException if there are too many passwords waiting
+   */
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return execute(verifyTimer, () -> delegate.matches(rawPassword, encodedPassword));
+  }
+
+  /**
+   * Returns the password encoder that hashes and verifies passwords with this service.
+   */
+  public PasswordEncoder getPasswordEncoder() {
+    return passwordEncoder;
+  }
+
+  /**
+   * Finds the highest bcrypt strength that hashes a password within the target time. Each step of
+   * the strength doubles the time, so the time is measured once for the lowest strength only.
+   */
+  int calibrate() {
+    BCryptPasswordEncoder sample = new BCryptPasswordEncoder(MIN_CALIBRATED_STRENGTH);
+    long nanos = Long.MAX_VALUE;
+
+    // the best of a few rounds, so the first ones that run before JIT compilation don't count
+    for (int round = 0; round < CALIBRATION_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      sample.encode("calibration");
+      nanos = Math.min(nanos, System.nanoTime() - start);
+    }
+
+    double millis = nanos / 1_000_000.0;
+    int calibrated = MIN_CALIBRATED_STRENGTH;
+
+    while (calibrated < MAX_CALIBRATED_STRENGTH && millis * 2 <= targetMillis) {
+      millis *= 2;
+      ++calibrated;
+    }
+
+    if (millis > targetMillis) {
+      LOGGER.warn("Hashing a password with the lowest strength {} takes {} ms, more than {} ms",
+          MIN_CALIBRATED_STRENGTH, millis, targetMillis);
+    }
+
+    return calibrated;
+  }
+
+  private static PasswordEncoder createEncoder(int strength) {
+    Map<String, PasswordEncoder> encoders = new HashMap<>();
+    encoders.put(BCRYPT, new StrengthAwareBCryptPasswordEncoder(strength));
+
+    DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(BCRYPT, encoders);
+    // hashes stored before the scheme id prefix was introduced are plain bcrypt hashes
+    encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder(strength));
+
+    return encoder;
+  }
+
+  private <T> T execute(Timer timer, Supplier<T> task) {
+    Future<T> future;
+
+    try {
+      future = executor.submit(() -> timer.record(task));
+    } catch (RejectedExecutionException ex) {
+      rejections.increment();
+      throw new ServiceUnavailableMessageException(ERROR_SERVICE_BUSY);
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableMessageException(ERROR_SERVICE_BUSY);
+    } catch (ExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  private final class BoundedPasswordEncoder implements PasswordEncoder {
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+      return PasswordHashingService.this.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+      return PasswordHashingService.this.matches(rawPassword, encodedPassword);
+    }
+
+    /**
+     * Rehashing a password costs as much as checking it, so it is skipped while other passwords
+     * wait for a thread. The password is then rehashed on one of the next logins.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+      return executor.getQueue().isEmpty() && delegate.upgradeEncoding(encodedPassword);
+    }
+  }
+
+  /**
+   * Reports hashes of any other strength as needing an upgrade, so lowering the strength is
+   * applied to stored passwords too, not only raising it.
+   */
+  private static final class StrengthAwareBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    private static final Pattern STRENGTH = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+
+    StrengthAwareBCryptPasswordEncoder(int strength) {
+      super(strength);
+      this.strength = strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+      if (encodedPassword == null) {
+        return false;
+      }
+
+      Matcher matcher = STRENGTH.matcher(encodedPassword);
+      return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+  }
+
+}
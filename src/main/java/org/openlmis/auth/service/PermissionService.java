@@ -16,12 +16,29 @@
 package org.openlmis.auth.service;
 
 import static org.openlmis.auth.i18n.MessageKeys.ERROR_NO_FOLLOWING_PERMISSION;
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_PERMISSION_BATCH_TOO_LARGE;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.dto.PermissionCheckDto;
+import org.openlmis.auth.dto.PermissionCheckResultDto;
 import org.openlmis.auth.dto.ResultDto;
-import org.openlmis.auth.dto.RightDto;
-import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
+import org.openlmis.auth.exception.AuthenticationMessageException;
 import org.openlmis.auth.exception.PermissionMessageException;
+import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.service.referencedata.UserReferenceDataService;
 import org.openlmis.auth.util.AuthenticationHelper;
 import org.openlmis.auth.util.Message;
@@ -32,6 +49,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Service;
 
 @Service
+@SuppressWarnings("PMD.TooManyMethods")
 public class PermissionService {
   public static final String USERS_MANAGE = "USERS_MANAGE";
   public static final String SERVICE_ACCOUNTS_MANAGE = "SERVICE_ACCOUNTS_MANAGE";
@@ -45,16 +63,74 @@ public class PermissionService {
   @Autowired
   private ApiKeySettings apiKeySettings;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @Value("${auth.server.clientId}")
   private String serviceTokenClientId;
 
+  @Value("${permission.check.maxBatchSize}")
+  private int maxBatchSize;
+
+  @Value("${permission.cache.maxSize}")
+  private long decisionCacheMaxSize;
+
+  @Value("${permission.cache.ttlSeconds}")
+  private long decisionCacheTtlSeconds;
+
+  @Value("${permission.cache.rightTtlSeconds}")
+  private long rightCacheTtlSeconds;
+
+  // (user id, right name) -> whether the user has the right
+  private Cache<Pair<UUID, String>, Boolean> decisions;
+
+  // right name -> right id, rights are not expected to change while the service is running
+  private Cache<String, UUID> rightIds;
+
+  /**
+   * Creates caches for permission decisions and right ids and registers their metrics.
+   */
+  @PostConstruct
+  public void init() {
+    decisions = CacheBuilder
+        .newBuilder()
+        .maximumSize(decisionCacheMaxSize)
+        .expireAfterWrite(decisionCacheTtlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    rightIds = CacheBuilder
+        .newBuilder()
+        .expireAfterWrite(rightCacheTtlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    GuavaCacheMetrics.monitor(meterRegistry, decisions, "permission.decisions");
+    GuavaCacheMetrics.monitor(meterRegistry, rightIds, "permission.rights");
+  }
+
+  /**
+   * Removes cached permission decisions of the given users, so their rights are checked in the
+   * reference data service again.
+   *
+   * @param userIds ids of users whose decisions should be removed
+   */
+  public void evictDecisions(Collection<UUID> userIds) {
+    decisions
+        .asMap()
+        .keySet()
+        .removeIf(key -> userIds.contains(key.getLeft()));
+  }
+
   /**
    * Checks whether user can edit password of the user with the given username.
    *
    * @param username  the username of the user
    */
   public void canEditUserPassword(String username) {
-    if (username.equals(authenticationHelper.getCurrentUser().getUsername())) {
+    OAuth2Authentication authentication = getAuthentication();
+
+    if (!authentication.isClientOnly() && username.equals(authentication.getName())) {
       return;
     }
     canManageUsers(null);
@@ -79,33 +155,106 @@ public class PermissionService {
     return hasRight(rightName, false, null);
   }
 
+  /**
+   * Checks many rights of the current user at once. Each distinct right is checked only once, no
+   * matter how many target users it is requested for. A right that does not exist is not granted.
+   *
+   * @param checks rights to check, optionally with the id of the user they are checked for
+   * @return result for each of the given checks, in the order of the given checks
+   * @throws ValidationMessageException if there are more checks than allowed in one batch
+   */
+  public List<PermissionCheckResultDto> hasRights(List<PermissionCheckDto> checks) {
+    if (checks.size() > maxBatchSize) {
+      throw new ValidationMessageException(
+          new Message(ERROR_PERMISSION_BATCH_TOO_LARGE, maxBatchSize));
+    }
+
+    OAuth2Authentication authentication = getAuthentication();
+    Map<String, Boolean> decisionsByRight = new HashMap<>();
+    List<PermissionCheckResultDto> results = new ArrayList<>(checks.size());
+
+    for (PermissionCheckDto check : checks) {
+      boolean decision = isCurrentUser(authentication, check.getUserId())
+          || decisionsByRight.computeIfAbsent(check.getRightName(),
+              rightName -> hasExistingRight(authentication, rightName));
+
+      results.add(new PermissionCheckResultDto(check, decision));
+    }
+
+    return results;
+  }
+
+  private boolean hasExistingRight(OAuth2Authentication authentication, String rightName) {
+    try {
+      return hasRight(authentication, rightName, false, null);
+    } catch (AuthenticationMessageException exp) {
+      // the right does not exist, which must not fail the other checks
+      return false;
+    }
+  }
+
   private boolean hasRight(String rightName, boolean allowApiKey, UUID expectedUserId) {
-    OAuth2Authentication authentication = (OAuth2Authentication) SecurityContextHolder
-        .getContext()
-        .getAuthentication();
+    return hasRight(getAuthentication(), rightName, allowApiKey, expectedUserId);
+  }
 
+  private boolean hasRight(OAuth2Authentication authentication, String rightName,
+      boolean allowApiKey, UUID expectedUserId) {
     if (authentication.isClientOnly()) {
       return checkServiceToken(allowApiKey, authentication);
     } else {
-      return checkUserToken(rightName, expectedUserId);
+      return checkUserToken(authentication, rightName, expectedUserId);
     }
   }
 
-  private boolean checkUserToken(String rightName, UUID expectedUserId) {
-    UserMainDetailsDto user = authenticationHelper.getCurrentUser();
-
-    if (user.getId().equals(expectedUserId)) {
+  private boolean checkUserToken(OAuth2Authentication authentication, String rightName,
+      UUID expectedUserId) {
+    if (isCurrentUser(authentication, expectedUserId)) {
       return true;
     }
 
-    RightDto right = authenticationHelper.getRight(rightName);
-    ResultDto<Boolean> result = userReferenceDataService.hasRight(
-        user.getId(), right.getId()
-    );
+    Pair<UUID, String> key = ImmutablePair.of(getUserId(authentication), rightName);
+    Boolean decision = decisions.getIfPresent(key);
+
+    if (null == decision) {
+      decision = checkRight(key.getLeft(), rightName);
+      decisions.put(key, decision);
+    }
+
+    return decision;
+  }
+
+  private boolean checkRight(UUID userId, String rightName) {
+    ResultDto<Boolean> result = userReferenceDataService.hasRight(userId, getRightId(rightName));
 
     return null != result && result.getResult();
   }
 
+  private UUID getRightId(String rightName) {
+    UUID rightId = rightIds.getIfPresent(rightName);
+
+    if (null == rightId) {
+      rightId = authenticationHelper.getRight(rightName).getId();
+      rightIds.put(rightName, rightId);
+    }
+
+    return rightId;
+  }
+
+  private boolean isCurrentUser(OAuth2Authentication authentication, UUID userId) {
+    return !authentication.isClientOnly() && getUserId(authentication).equals(userId);
+  }
+
+  private UUID getUserId(OAuth2Authentication authentication) {
+    // the id of the auth user is the same as the id of the reference data user
+    return ((User) authentication.getPrincipal()).getId();
+  }
+
+  private OAuth2Authentication getAuthentication() {
+    return (OAuth2Authentication) SecurityContextHolder
+        .getContext()
+        .getAuthentication();
+  }
+
   private boolean checkServiceToken(boolean allowApiKey, OAuth2Authentication authentication) {
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -0,0 +1,98 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_TOKEN_BATCH_TOO_LARGE;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.openlmis.auth.exception.ValidationMessageException;
+import org.openlmis.auth.util.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TokenIntrospectionService {
+  static final String ACTIVE = "active";
+
+  private static final Map<String, Object> INACTIVE = ImmutableMap.of(ACTIVE, false);
+
+  @Autowired
+  @Qualifier("defaultTokenServices")
+  private DefaultTokenServices tokenServices;
+
+  @Value("${token.introspection.maxBatchSize}")
+  private int maxBatchSize;
+
+  private final AccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+
+  /**
+   * Checks the given access tokens the same way as the check_token endpoint does. For a valid
+   * token the result contains the claims returned by check_token and the "active" flag set to
+   * true. For an unknown or expired token it only contains the "active" flag set to false.
+   *
+   * @param tokens the values of access tokens to check
+   * @return the results in the order of the given tokens
+   */
+  public List<Map<String, Object>> introspect(List<String> tokens) {
+    if (tokens.size() > maxBatchSize) {
+      throw new ValidationMessageException(
+          new Message(ERROR_TOKEN_BATCH_TOO_LARGE, maxBatchSize));
+    }
+
+    return tokens
+        .stream()
+        .map(this::introspect)
+        .collect(Collectors.toList());
+  }
+
+  private Map<String, Object> introspect(String value) {
+    OAuth2AccessToken token = StringUtils.isBlank(value)
+        ? null
+        : tokenServices.readAccessToken(value);
+
+    if (null == token || token.isExpired()) {
+      return INACTIVE;
+    }
+
+    OAuth2Authentication authentication;
+
+    try {
+      authentication = tokenServices.loadAuthentication(token.getValue());
+    } catch (InvalidTokenException exp) {
+      return INACTIVE;
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>(
+        accessTokenConverter.convertAccessToken(token, authentication));
+    result.put(ACTIVE, true);
+
+    return result;
+  }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openlmis.auth.dto.TokenRevocationDto;
+import org.openlmis.auth.dto.TokenRevocationFeedDto;
+import org.openlmis.auth.repository.TokenRevocationRepository;
+import org.openlmis.auth.security.ExtendedTokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class TokenRevocationService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TokenRevocationService.class);
+
+  @Autowired
+  private TokenStore tokenStore;
+
+  @Autowired
+  private TokenRevocationRepository tokenRevocationRepository;
+
+  @Value("${token.revocation.retentionSeconds}")
+  private long retentionSeconds;
+
+  @Value("${token.revocation.maxFeedSize}")
+  private int maxFeedSize;
+
+  /**
+   * Revokes the given access token and publishes its id in the revocation feed. Used when the
+   * user logs out and when an API key is removed.
+   *
+   * @param token the value of the access token
+   */
+  @Transactional
+  public void revokeToken(String token) {
+    tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(token));
+    tokenRevocationRepository.publish(getTokenId(token), null);
+  }
+
+  /**
+   * Revokes all access and refresh tokens of the given user, which ends every session of the
+   * user, and publishes the user name in the revocation feed. Used when the password of the user
+   * changes and when the user gets locked out.
+   *
+   * @param username the name of the user
+   */
+  @Transactional
+  public void revokeUserTokens(String username) {
+    revokeUsersTokens(Collections.singletonList(username));
+  }
+
+  /**
+   * Revokes all access and refresh tokens of the given users and publishes the names of the users
+   * that had any in the revocation feed. All of them are published with one statement at the end,
+   * so the feed versions are locked only from then until the transaction is committed. Used when
+   * the users are removed.
+   *
+   * @param usernames the names of the users
+   */
+  @Transactional
+  public void revokeUsersTokens(Collection<String> usernames) {
+    // other stores can't find tokens by the user alone
+    if (!(tokenStore instanceof ExtendedTokenStore)) {
+      LOGGER.warn("Tokens of users {} can't be revoked by {}", usernames, tokenStore);
+      return;
+    }
+
+    List<String> revokedUsers = new ArrayList<>();
+
+    for (String username : usernames) {
+      List<String> removed = ((ExtendedTokenStore) tokenStore).removeTokensByUserName(username);
+      LOGGER.info("Revoked {} access tokens of user {}", removed.size(), username);
+
+      if (!removed.isEmpty()) {
+        revokedUsers.add(username);
+      }
+    }
+
+    if (!revokedUsers.isEmpty()) {
+      tokenRevocationRepository.publishUsers(revokedUsers);
+    }
+  }
+
+  /**
+   * Returns the revocations published after the given version, oldest first. A resource service
+   * that caches check_token results passes the version from the previous response and drops the
+   * cached tokens with the returned ids, or of the returned users. If the feed is not complete,
+   * some revocations newer than the given version are not available any longer and the whole
+   * cache has to be dropped. The versions and the revocations are read from one snapshot, so
+   * a revocation removed in the meantime is still reported as missing.
+   *
+   * @param since the version of the last revocation known to the caller
+   * @return at most the configured number of revocations
+   */
+  @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+  public TokenRevocationFeedDto getRevocations(long since) {
+    long latest = tokenRevocationRepository.findLatestVersion();
+    long purged = tokenRevocationRepository.findPurgedVersion();
+
+    List<TokenRevocationDto> revocations = tokenRevocationRepository
+        .findByVersionGreaterThanOrderByVersionAsc(since, PageRequest.of(0, maxFeedSize))
+        .stream()
+        .map(TokenRevocationDto::newInstance)
+        .collect(Collectors.toList());
+
+    long version = revocations.isEmpty()
+        ? latest
+        : revocations.get(revocations.size() - 1).getVersion();
+
+    return new TokenRevocationFeedDto(version, since >= purged, revocations);
+  }
+
+  /**
+   * Removes revocations older than the retention period. A resource service must not cache
+   * check_token results for longer than that. Revocations are removed up to the newest version
+   * revoked before the end of that period, so no older version is left behind, and that version
+   * is remembered to tell readers that know only an older one that they missed some.
+   */
+  @Scheduled(fixedDelayString = "${token.reaper.intervalMillis}")
+  @Transactional
+  public void removeOldRevocations() {
+    Long version = tokenRevocationRepository
+        .findLatestVersionRevokedBefore(ZonedDateTime.now().minusSeconds(retentionSeconds));
+
+    if (null == version) {
+      return;
+    }
+
+    tokenRevocationRepository.updatePurgedVersion(version);
+    int removed = tokenRevocationRepository.deleteByVersionLessThanEqual(version);
+
+    if (removed > 0) {
+      LOGGER.debug("Removed {} old token revocations", removed);
+    }
+  }
+
+  // the same id as in the token store, so the value itself is never published
+  private String getTokenId(String token) {
+    return DigestUtils.md5Hex(token);
+  }
+
+}
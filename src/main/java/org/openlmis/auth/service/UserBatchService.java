@@ -0,0 +1,367 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto.FailedUserDetailsResponse;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto.UserAuthResponse;
+import org.openlmis.auth.dto.UserDto;
+import org.openlmis.auth.exception.ServerException;
+import org.openlmis.auth.i18n.MessageKeys;
+import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.referencedata.UserReferenceDataLookup;
+import org.openlmis.auth.service.referencedata.UserReferenceDataService;
+import org.openlmis.auth.web.UserDtoValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+
+/**
+ * Saves many auth users at once. The users are split into chunks that are processed in parallel
+ * on a bounded pool of workers. The passwords of a chunk are hashed first and then the chunk is
+ * validated and saved in its own transaction, so no connection is held while passwords are hashed.
+ * When a chunk can't be committed, its users are saved one by one to find out which of them failed.
+ */
+@Service
+public class UserBatchService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(UserBatchService.class);
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserDtoValidator userDtoValidator;
+
+  @Autowired
+  private UserReferenceDataService userReferenceDataService;
+
+  @Autowired
+  private PasswordHashingService passwordHashingService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Value("${users.batch.chunkSize}")
+  private int chunkSize;
+
+  @Value("${users.batch.poolSize}")
+  private int poolSize;
+
+  @Value("${users.batch.queueCapacity}")
+  private int queueCapacity;
+
+  private ExecutorService executor;
+  private TransactionTemplate transactionTemplate;
+
+  /**
+   * Creates the pool of workers. When all workers are busy and the queue is full, the chunk is
+   * processed by the calling thread, which slows down the caller instead of failing the request.
+   */
+  @PostConstruct
+  public void init() {
+    executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("user-batch-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Stops the pool of workers.
+   */
+  @PreDestroy
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Validates and saves the given users.
+   *
+   * @param users users to be saved
+   * @return ids of users that were saved and of users that could not be saved, with reasons
+   */
+  public UserAuthDetailsResponseDto saveAuthUsers(List<UserDto> users) {
+    UserReferenceDataLookup lookup = new UserReferenceDataLookup(userReferenceDataService);
+    List<Future<UserAuthDetailsResponseDto>> futures = new ArrayList<>();
+
+    for (List<UserDto> chunk : partition(users)) {
+      futures.add(executor.submit(inCurrentContext(() -> saveChunk(chunk, lookup))));
+    }
+
+    List<UserAuthResponse> successfulResults = new ArrayList<>();
+    List<UserAuthResponse> failedResults = new ArrayList<>();
+
+    for (Future<UserAuthDetailsResponseDto> future : futures) {
+      UserAuthDetailsResponseDto result = getResult(future);
+      successfulResults.addAll(result.getSuccessfulResults());
+      failedResults.addAll(result.getFailedResults());
+    }
+
+    return new UserAuthDetailsResponseDto(successfulResults, failedResults);
+  }
+
+  // users with the same id are kept in the chunk of the first of them, so they are saved one
+  // after another in their order, like one user after another update, and not by parallel chunks
+  private List<List<UserDto>> partition(List<UserDto> users) {
+    List<List<UserDto>> chunks = new ArrayList<>();
+    Map<UUID, List<UserDto>> chunksById = new HashMap<>();
+    List<UserDto> current = null;
+
+    for (UserDto user : users) {
+      List<UserDto> chunk = null == user.getId() ? null : chunksById.get(user.getId());
+
+      if (null == chunk) {
+        if (null == current || current.size() >= chunkSize) {
+          current = new ArrayList<>();
+          chunks.add(current);
+        }
+
+        chunk = current;
+
+        if (null != user.getId()) {
+          chunksById.put(user.getId(), chunk);
+        }
+      }
+
+      chunk.add(user);
+    }
+
+    return chunks;
+  }
+
+  private UserAuthDetailsResponseDto saveChunk(List<UserDto> chunk,
+      UserReferenceDataLookup lookup) {
+    try {
+      // fetched before the transaction starts, so no connection is held during the remote call
+      lookup.prefetch(getIds(chunk));
+    } catch (RuntimeException ex) {
+      LOGGER.warn("Could not fetch reference data users of a chunk, fetching them one by one", ex);
+    }
+
+    // hashed before the transaction starts too, so no connection is held while hashing
+    Map<UserDto, String> hashes = new IdentityHashMap<>();
+    List<UserDto> hashed = new ArrayList<>();
+    List<UserAuthResponse> failedResults = new ArrayList<>();
+
+    for (UserDto dto : chunk) {
+      try {
+        if (StringUtils.hasText(dto.getPassword())) {
+          hashes.put(dto, passwordHashingService.encode(dto.getPassword()));
+        }
+        hashed.add(dto);
+      } catch (RuntimeException ex) {
+        failedResults.add(toFailedResponse(dto.getId(), ex));
+      }
+    }
+
+    UserAuthDetailsResponseDto result = saveInTransaction(hashed, lookup, hashes);
+    failedResults.addAll(result.getFailedResults());
+
+    return new UserAuthDetailsResponseDto(result.getSuccessfulResults(), failedResults);
+  }
+
+  private UserAuthDetailsResponseDto saveInTransaction(List<UserDto> chunk,
+      UserReferenceDataLookup lookup, Map<UserDto, String> hashes) {
+    if (chunk.isEmpty()) {
+      return new UserAuthDetailsResponseDto(Collections.emptyList(), Collections.emptyList());
+    }
+
+    try {
+      return transactionTemplate.execute(status -> validateAndSave(chunk, lookup, hashes));
+    } catch (RuntimeException ex) {
+      if (chunk.size() == 1) {
+        return new UserAuthDetailsResponseDto(
+            Collections.emptyList(),
+            Collections.singletonList(toFailedResponse(chunk.get(0).getId(), ex)));
+      }
+
+      LOGGER.warn("Could not save a chunk of {} users, saving them one by one", chunk.size(), ex);
+
+      List<UserAuthResponse> successfulResults = new ArrayList<>();
+      List<UserAuthResponse> failedResults = new ArrayList<>();
+
+      for (UserDto user : chunk) {
+        UserAuthDetailsResponseDto result = saveInTransaction(
+            Collections.singletonList(user), lookup, hashes);
+        successfulResults.addAll(result.getSuccessfulResults());
+        failedResults.addAll(result.getFailedResults());
+      }
+
+      return new UserAuthDetailsResponseDto(successfulResults, failedResults);
+    }
+  }
+
+  private UserAuthDetailsResponseDto validateAndSave(List<UserDto> chunk,
+      UserReferenceDataLookup lookup, Map<UserDto, String> hashes) {
+    // existing users are loaded at once, the validator then finds them in the persistence context
+    Map<UUID, User> existing = StreamSupport
+        .stream(userRepository.findAllById(getIds(chunk)).spliterator(), false)
+        .collect(Collectors.toMap(User::getId, Function.identity()));
+
+    List<UserAuthResponse> successfulResults = new ArrayList<>();
+    List<UserAuthResponse> failedResults = new ArrayList<>();
+
+    for (UserDto dto : chunk) {
+      try {
+        BindingResult bindingResult = new BeanPropertyBindingResult(dto, "userDto");
+        userDtoValidator.validate(dto, bindingResult, lookup);
+
+        if (bindingResult.hasErrors()) {
+          List<String> errors = bindingResult
+              .getAllErrors()
+              .stream()
+              .map(DefaultMessageSourceResolvable::getDefaultMessage)
+              .collect(Collectors.toList());
+          failedResults.add(new FailedUserDetailsResponse(dto.getId(), errors));
+        } else {
+          User user = save(existing.get(dto.getId()), dto,
+              new HashedPasswordEncoder(hashes.get(dto)));
+
+          if (null != dto.getId()) {
+            // the next user with the same id in this chunk updates this one
+            existing.put(dto.getId(), user);
+          }
+          successfulResults.add(new UserAuthResponse(dto.getId()));
+        }
+      } catch (RuntimeException ex) {
+        failedResults.add(toFailedResponse(dto.getId(), ex));
+      }
+    }
+
+    return new UserAuthDetailsResponseDto(successfulResults, failedResults);
+  }
+
+  private List<UUID> getIds(List<UserDto> chunk) {
+    return chunk
+        .stream()
+        .map(UserDto::getId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  private User save(User existing, UserDto dto, PasswordEncoder encoder) {
+    if (null == existing) {
+      // persist instead of merge, so new users are inserted without selecting them first
+      User user = User.newInstance(dto, encoder);
+      entityManager.persist(user);
+
+      return user;
+    }
+
+    // changes of a managed entity are flushed when the chunk transaction is committed
+    existing.updateFrom(dto, encoder);
+
+    return existing;
+  }
+
+  private FailedUserDetailsResponse toFailedResponse(UUID userId, Exception ex) {
+    String errorMessage = String.format("%s: %s", MessageKeys.ERROR_SAVING_BATCH_AUTH_DETAILS,
+        ex.getMessage());
+
+    return new FailedUserDetailsResponse(userId, Collections.singletonList(errorMessage));
+  }
+
+  private <T> Callable<T> inCurrentContext(Callable<T> task) {
+    Locale locale = LocaleContextHolder.getLocale();
+
+    Callable<T> localized = () -> {
+      Locale previous = LocaleContextHolder.getLocale();
+      LocaleContextHolder.setLocale(locale);
+
+      try {
+        return task.call();
+      } finally {
+        LocaleContextHolder.setLocale(previous);
+      }
+    };
+
+    return DelegatingSecurityContextCallable
+        .create(localized, SecurityContextHolder.getContext());
+  }
+
+  private UserAuthDetailsResponseDto getResult(Future<UserAuthDetailsResponseDto> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ServerException(ex, MessageKeys.ERROR_SAVING_BATCH_AUTH_DETAILS);
+    } catch (ExecutionException ex) {
+      throw new ServerException(ex.getCause(), MessageKeys.ERROR_SAVING_BATCH_AUTH_DETAILS);
+    }
+  }
+
+  /**
+   * Returns the password hashed before the chunk transaction was started.
+   */
+  private final class HashedPasswordEncoder implements PasswordEncoder {
+    private final String hash;
+
+    HashedPasswordEncoder(String hash) {
+      this.hash = hash;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+      return hash;
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+      return passwordHashingService.matches(rawPassword, encodedPassword);
+    }
+  }
+
+}
@@ -16,15 +16,17 @@
 package org.openlmis.auth.service;
 
 import java.util.Optional;
+import org.openlmis.auth.domain.User;
 import org.openlmis.auth.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
   @Autowired
   private UserRepository userRepository;
@@ -36,4 +38,17 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         .orElseThrow(() -> new UsernameNotFoundException(
           String.format("User with username=%s was not found", username)));
   }
+
+  /**
+   * Stores the password of the given user hashed again with the current hashing parameters. Only
+   * the password column is written, and only if it still holds the hash that was verified, so a
+   * password reset at the same time is not lost.
+   */
+  @Override
+  public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+    User user = userRepository.findOneByUsernameIgnoreCase(userDetails.getUsername());
+    userRepository.updatePassword(user.getId(), userDetails.getPassword(), newPassword);
+
+    return userDetails;
+  }
 }
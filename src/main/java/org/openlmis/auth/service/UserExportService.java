@@ -0,0 +1,107 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import org.openlmis.auth.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes all auth users as newline delimited JSON. Users are read with a database cursor and
+ * written as they come, so the memory used does not depend on the number of users.
+ */
+@Service
+public class UserExportService {
+  private static final String SELECT_USERS_SQL = "SELECT u.id, u.username, u.enabled, "
+      + "u.lockedout, a.lastunsuccessfulauthenticationattemptdate "
+      + "FROM auth.auth_users u "
+      + "LEFT JOIN auth.unsuccessful_authentication_attempts a ON a.userid = u.id "
+      + "ORDER BY u.id";
+
+  private static final int LINE_SEPARATOR = '\n';
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${users.export.fetchSize}")
+  private int fetchSize;
+
+  /**
+   * Writes each auth user (without password) as a JSON object in a separate line. The output is
+   * flushed after each fetched batch of users.
+   *
+   * @param outputStream the stream to write to, it is not closed
+   * @throws IOException if the users can't be written
+   */
+  // the cursor is kept open by the driver only within a transaction
+  @Transactional(readOnly = true)
+  public void exportAuthUsers(OutputStream outputStream) throws IOException {
+    ObjectWriter writer = objectMapper
+        .writerFor(UserDto.class)
+        .without(SerializationFeature.INDENT_OUTPUT)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    try {
+      jdbcTemplate.query(connection -> {
+        PreparedStatement statement = connection.prepareStatement(SELECT_USERS_SQL,
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        return statement;
+      }, (ResultSet rs) -> write(writer, outputStream, rs));
+    } catch (UncheckedIOException exp) {
+      throw exp.getCause();
+    }
+
+    outputStream.flush();
+  }
+
+  private void write(ObjectWriter writer, OutputStream outputStream, ResultSet rs)
+      throws SQLException {
+    OffsetDateTime lastAttemptDate = rs.getObject(5, OffsetDateTime.class);
+    UserDto user = new UserDto(rs.getObject(1, UUID.class), rs.getString(2),
+        rs.getBoolean(3), rs.getBoolean(4),
+        null == lastAttemptDate ? null : lastAttemptDate.toZonedDateTime());
+
+    try {
+      outputStream.write(writer.writeValueAsBytes(user));
+      outputStream.write(LINE_SEPARATOR);
+
+      if (rs.getRow() % fetchSize == 0) {
+        outputStream.flush();
+      }
+    } catch (IOException exp) {
+      throw new UncheckedIOException(exp);
+    }
+  }
+
+}
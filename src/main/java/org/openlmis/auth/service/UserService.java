@@ -15,42 +15,45 @@
 
 package org.openlmis.auth.service;
 
-import java.time.ZonedDateTime;
+import static com.google.common.base.Preconditions.checkState;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
+import javax.annotation.PostConstruct;
 
-import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.domain.User;
-import org.openlmis.auth.dto.SaveBatchResultDto;
 import org.openlmis.auth.dto.UnlockResponseDto;
-import org.openlmis.auth.dto.UserAuthDetailsResponseDto;
+import org.openlmis.auth.dto.UserDeleteResponseDto;
 import org.openlmis.auth.dto.UserDto;
-import org.openlmis.auth.i18n.MessageKeys;
+import org.openlmis.auth.repository.PasswordResetTokenRepository;
 import org.openlmis.auth.repository.UnsuccessfulAuthenticationAttemptRepository;
 import org.openlmis.auth.repository.UserRepository;
-import org.openlmis.auth.web.UserDtoValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.validation.BeanPropertyBindingResult;
-import org.springframework.validation.BindingResult;
 
 @Service
 public class UserService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(UserService.class);
 
+  private static final UUID MIN_ID = new UUID(0, 0);
+  private static final List<Boolean> LOCKOUT_STATES = Arrays.asList(Boolean.TRUE, Boolean.FALSE);
+
   @Autowired
   private UserRepository userRepository;
 
@@ -58,12 +61,38 @@ public class UserService {
   private UnsuccessfulAuthenticationAttemptRepository attemptCounterRepository;
 
   @Autowired
-  private UserDtoValidator userDtoValidator;
+  private PasswordResetTokenRepository passwordResetTokenRepository;
+
+  @Autowired
+  private PasswordHashingService passwordHashingService;
+
+  @Autowired
+  private PermissionService permissionService;
+
+  @Autowired
+  private TokenRevocationService tokenRevocationService;
+
+  @Value("${users.delete.chunkSize}")
+  private int deleteChunkSize;
 
-  // self-reference so per-user unlockUser runs through the proxy and keeps its REQUIRES_NEW tx
+  @Value("${users.unlock.chunkSize}")
+  private int unlockChunkSize;
+
+  // self-reference so deleteChunk, unlockChunk and unlockUser run through the proxy and keep
+  // their REQUIRES_NEW tx
   @Autowired
   private UserService self;
 
+  /**
+   * Checks the configured chunk sizes. Users are processed in a loop that moves forward by one
+   * chunk at a time, so a chunk size below one would never end it.
+   */
+  @PostConstruct
+  public void init() {
+    checkState(deleteChunkSize > 0, "users.delete.chunkSize must be at least 1");
+    checkState(unlockChunkSize > 0, "users.unlock.chunkSize must be at least 1");
+  }
+
   /**
    * Creates a new user or updates an existing one.
    *
@@ -76,49 +105,14 @@ public class UserService {
     
     if (dbUser.isPresent()) {
       savedUser = dbUser.get();
-      savedUser.updateFrom(request);
+      savedUser.updateFrom(request, passwordHashingService.getPasswordEncoder());
     } else {
-      savedUser = User.newInstance(request);
+      savedUser = User.newInstance(request, passwordHashingService.getPasswordEncoder());
     }
 
     return toDto(userRepository.save(savedUser));
   }
 
-  /**
-   * Saves auth user details.
-   *
-   * @param userDto user contact details object
-   * @return {@link SaveBatchResultDto} object with saving results
-   */
-  public SaveBatchResultDto<UserAuthDetailsResponseDto.UserAuthResponse> saveAuthUserDetails(
-      UserDto userDto) {
-    List<UserAuthDetailsResponseDto.UserAuthResponse> successfulResults = new ArrayList<>();
-    List<UserAuthDetailsResponseDto.UserAuthResponse> failedResults = new ArrayList<>();
-    try {
-      BindingResult bindingResult = new BeanPropertyBindingResult(userDto, "userDto");
-      userDtoValidator.validate(userDto, bindingResult);
-      List<String> errors;
-      if (bindingResult.hasErrors()) {
-        errors = bindingResult.getAllErrors().stream()
-            .map(DefaultMessageSourceResolvable::getDefaultMessage)
-            .collect(Collectors.toList());
-        failedResults.add(
-            new UserAuthDetailsResponseDto.FailedUserDetailsResponse(userDto.getId(), errors));
-      } else {
-        saveUser(userDto);
-        successfulResults.add(new UserAuthDetailsResponseDto.UserAuthResponse(userDto.getId()));
-      }
-    } catch (Exception ex) {
-      String errorMessage = String.format("%s: %s", MessageKeys.ERROR_SAVING_BATCH_AUTH_DETAILS,
-          ex.getMessage());
-      failedResults.add(new UserAuthDetailsResponseDto.FailedUserDetailsResponse(
-          userDto.getId(),
-          Collections.singletonList(errorMessage)));
-    }
-
-    return new SaveBatchResultDto<>(successfulResults, failedResults);
-  }
-
   /**
    * Gets user auth details.
    *
@@ -130,44 +124,86 @@ public class UserService {
   }
 
   /**
-   * Returns all auth users as DTOs (without password), optionally filtered by lockout state.
+   * Returns auth users as DTOs (without password), optionally filtered by lockout state, in the
+   * order of their ids. The filter and the pagination are applied by the database, so only the
+   * requested users are read.
    *
    * @param lockedOut when not {@code null}, only users with the matching lockout state are returned
+   * @param afterId   when not {@code null}, only users with greater ids are returned; passing the
+   *                  id of the last user of the previous page gives the next page
+   * @param pageable  the page to return; unpaged returns all matching users
    * @return matching auth users
    */
-  public List<UserDto> getAuthUsers(Boolean lockedOut) {
-    Map<UUID, ZonedDateTime> lastAttemptByUserId = StreamSupport
-        .stream(attemptCounterRepository.findAll().spliterator(), false)
-        .collect(Collectors.toMap(
-            attempt -> attempt.getUser().getId(),
-            UnsuccessfulAuthenticationAttempt::getLastUnsuccessfulAuthenticationAttemptDate));
-
-    return findAll().stream()
-        .filter(user -> lockedOut == null || user.isLockedOut() == lockedOut)
-        .map(user -> {
-          UserDto dto = new UserDto(user.getId(), user.getUsername(), user.getEnabled());
-          dto.setLockedOut(user.isLockedOut());
-          dto.setLastUnsuccessfulAuthenticationAttemptDate(
-              lastAttemptByUserId.get(user.getId()));
-          return dto;
-        })
-        .collect(Collectors.toList());
+  public List<UserDto> getAuthUsers(Boolean lockedOut, UUID afterId, Pageable pageable) {
+    List<Boolean> lockoutStates = null == lockedOut
+        ? LOCKOUT_STATES
+        : Collections.singletonList(lockedOut);
+
+    return userRepository.findAuthUsers(
+        null == afterId ? MIN_ID : afterId, lockoutStates, pageable);
   }
 
   /**
-   * Deletes user auth details.
+   * Deletes user auth details in chunks, each in its own transaction, so a large number of users
+   * does not hold the locks or exceed the query parameter limit. Password reset tokens of the users
+   * are deleted with them; the other rows referencing the users are removed by the database. Tokens
+   * of the deleted users are revoked in the transaction of their chunk, and cached permission
+   * decisions of the users are dropped after it is committed.
    *
    * @param userIds user ids for whom auth details will be removed
+   * @return ids of the deleted users and of the users that were not found
    */
-  @Transactional
-  public void deleteByUserIds(Set<UUID> userIds) {
-    userRepository.deleteByUserIds(userIds);
+  public UserDeleteResponseDto deleteByUserIds(Collection<UUID> userIds) {
+    UserDeleteResponseDto response = new UserDeleteResponseDto();
+    List<UUID> distinctIds = new ArrayList<>(new LinkedHashSet<>(userIds));
+
+    for (int from = 0; from < distinctIds.size(); from += deleteChunkSize) {
+      List<UUID> chunk = distinctIds
+          .subList(from, Math.min(from + deleteChunkSize, distinctIds.size()));
+
+      Map<UUID, String> deleted = self.deleteChunk(chunk);
+      // cached decisions are dropped only after the chunk is committed
+      permissionService.evictDecisions(deleted.keySet());
+
+      for (UUID userId : chunk) {
+        if (deleted.containsKey(userId)) {
+          response.getDeleted().add(userId);
+        } else {
+          response.getNotFound().add(userId);
+        }
+      }
+    }
+
+    return response;
+  }
+
+  /**
+   * Deletes the given users and their password reset tokens and revokes the tokens of the deleted
+   * users in a single transaction, so a user is never deleted while the tokens of the user are
+   * still valid. The tokens are revoked last, which keeps the lock on the revocation feed versions
+   * as short as possible. Returns the usernames of the deleted users by their ids; missing users
+   * are not included.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public Map<UUID, String> deleteChunk(Collection<UUID> userIds) {
+    passwordResetTokenRepository.deleteByUserIds(userIds);
+
+    Map<UUID, String> deleted = userRepository
+        .deleteByUserIds(userIds)
+        .stream()
+        .collect(Collectors.toMap(User::getId, User::getUsername));
+
+    // tokens are kept by the username, so they are still found after the user is deleted
+    tokenRevocationService.revokeUsersTokens(deleted.values());
+
+    return deleted;
   }
 
   /**
    * Bulk-unlocks the given users, grouping the result into unlocked, notFound and failed buckets.
-   * Each user is unlocked in its own transaction (so one failure does not affect the others) and an
-   * INFO audit line is logged per unlocked user.
+   * The users are unlocked in chunks, each with a couple of set-based updates in its own
+   * transaction. If a chunk fails, its users are unlocked one by one, so one failure does not
+   * affect the others. An INFO audit line is logged per unlocked user.
    *
    * @param userIds ids of the users to unlock
    * @param actor   username of the administrator performing the unlock, for the audit log
@@ -175,51 +211,87 @@ public class UserService {
    */
   public UnlockResponseDto unlockUsers(List<UUID> userIds, String actor) {
     UnlockResponseDto response = new UnlockResponseDto();
+    List<UUID> distinctIds = new ArrayList<>(new LinkedHashSet<>(userIds));
 
-    for (UUID userId : userIds) {
+    for (int from = 0; from < distinctIds.size(); from += unlockChunkSize) {
+      List<UUID> chunk = distinctIds
+          .subList(from, Math.min(from + unlockChunkSize, distinctIds.size()));
+
+      Map<UUID, String> unlocked;
       try {
-        String username = self.unlockUser(userId);
-        if (null == username) {
-          response.getNotFound().add(userId);
-        } else {
-          response.getUnlocked().add(userId);
-          LOGGER.info("User '{}' unlocked user '{}' (id: {})", actor, username, userId);
-        }
+        unlocked = self.unlockChunk(chunk);
       } catch (Exception ex) {
-        LOGGER.warn("Failed to unlock user with id: {}", userId, ex);
-        response.getFailed().add(userId);
+        LOGGER.warn("Failed to unlock {} users at once, unlocking them one by one",
+            chunk.size(), ex);
+        unlockOneByOne(chunk, actor, response);
+        continue;
+      }
+
+      for (UUID userId : chunk) {
+        addResult(response, userId, unlocked.get(userId), actor);
       }
     }
 
     return response;
   }
 
+  /**
+   * Unlocks the given users in a single transaction. Resets their failed-attempt counters, then
+   * clears their lockout flags. The counter rows are written before the user rows, in the same
+   * order as on a failed login. Returns the usernames of the unlocked users by their ids; missing
+   * users are not included.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public Map<UUID, String> unlockChunk(Collection<UUID> userIds) {
+    attemptCounterRepository.resetCounters(userIds);
+
+    return userRepository
+        .unlockByIds(userIds)
+        .stream()
+        .collect(Collectors.toMap(User::getId, User::getUsername));
+  }
+
   /**
    * Unlocks a single user in its own transaction. Resets the failed-attempt counter, then clears
-   * the lockout flag (order matters for the unlock/login race). Returns the username, or
-   * {@code null} if the user does not exist.
+   * the lockout flag. The counter row is written before the user row, in the same order as on a
+   * failed login, so the two can't deadlock. Returns the username, or {@code null} if the user
+   * does not exist.
    */
   @Transactional(propagation = Propagation.REQUIRES_NEW)
   public String unlockUser(UUID userId) {
-    // pessimistic write lock to serialize with a concurrent authentication attempt for this user
-    Optional<User> optionalUser = userRepository.findByIdForUpdate(userId);
+    Optional<User> optionalUser = userRepository.findById(userId);
     if (!optionalUser.isPresent()) {
       return null;
     }
 
     User user = optionalUser.get();
 
-    attemptCounterRepository.findByUserId(userId).ifPresent(counter -> {
-      counter.resetCounter();
-      attemptCounterRepository.save(counter);
-    });
-
-    user.setLockedOut(false);
-    userRepository.save(user);
+    attemptCounterRepository.resetCounter(userId);
+    userRepository.updateLockedOut(userId, false);
 
     return user.getUsername();
   }
 
+  private void unlockOneByOne(List<UUID> userIds, String actor, UnlockResponseDto response) {
+    for (UUID userId : userIds) {
+      try {
+        addResult(response, userId, self.unlockUser(userId), actor);
+      } catch (Exception ex) {
+        LOGGER.warn("Failed to unlock user with id: {}", userId, ex);
+        response.getFailed().add(userId);
+      }
+    }
+  }
+
+  private void addResult(UnlockResponseDto response, UUID userId, String username, String actor) {
+    if (null == username) {
+      response.getNotFound().add(userId);
+    } else {
+      response.getUnlocked().add(userId);
+      LOGGER.info("User '{}' unlocked user '{}' (id: {})", actor, username, userId);
+    }
+  }
+
   private UserDto toDto(User existing) {
     UserDto dto = new UserDto();
     existing.export(dto);
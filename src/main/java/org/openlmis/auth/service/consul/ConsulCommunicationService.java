@@ -15,79 +15,183 @@
 
 package org.openlmis.auth.service.consul;
 
-import com.google.common.collect.Sets;
-import java.util.Optional;
-import java.util.Set;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.AccessLevel;
 import lombok.Setter;
-import org.openlmis.auth.domain.Client;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.openlmis.auth.dto.consul.ServicesListDto;
 import org.openlmis.auth.repository.ClientRepository;
+import org.openlmis.auth.service.ClientDetailsServiceImpl;
 import org.openlmis.auth.service.ConfigurationSettingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
+/**
+ * Keeps the resource ids of OAuth clients equal to the services registered in Consul. The
+ * service catalog is watched with Consul blocking queries, so the clients are only updated when
+ * the catalog changes, and then with a single statement.
+ */
 @Component
 public class ConsulCommunicationService {
   private static final Logger LOGGER = LoggerFactory.getLogger(ConsulCommunicationService.class);
   static final String SERVICE_SEPARATOR = ",";
+  static final String CONSUL_INDEX_HEADER = "X-Consul-Index";
 
   @Setter(AccessLevel.PACKAGE)
-  private RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  private RestOperations restTemplate;
 
   @Autowired
   private ClientRepository clientRepository;
 
+  @Autowired
+  private ClientDetailsServiceImpl clientDetailsService;
+
   @Autowired
   private ConfigurationSettingService configurationSettingService;
 
+  private ExecutorService watchExecutor;
+
+  private long lastIndex;
+  private volatile String resourceIds;
+  private boolean reapplyResourceIds;
+
   /**
-   * Update OAuth resources.
+   * Starts watching the service catalog once the application is ready.
    */
-  @Scheduled(fixedRate = 60 * 1000)
-  @Transactional
-  public void updateOAuthResources() {
-    LOGGER.info("Updating OAuth resources...");
-
-    Set<String> services = getAvailableServices();
-    String servicesString = String.join(",", services);
-    Iterable<Client> clients = clientRepository.findAll();
-
-    for (Client client : clients) {
-      String resourceIds = Optional.ofNullable(client.getResourceIds()).orElse("");
-      Set<String> clientServices = Sets.newHashSet(resourceIds.split(SERVICE_SEPARATOR));
-
-      if (!services.equals(clientServices)) {
-        client.setResourceIds(servicesString);
-        clientRepository.save(client);
-        LOGGER.info("Updated resources for {}: {}", client.getClientId(), servicesString);
-      }
+  @EventListener(ApplicationReadyEvent.class)
+  public void startWatching() {
+    watchExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("consul-watch-%d")
+        .setDaemon(true)
+        .build());
+    watchExecutor.submit(this::watch);
+  }
+
+  /**
+   * Stops watching the service catalog.
+   */
+  @PreDestroy
+  public void destroy() {
+    if (null != watchExecutor) {
+      watchExecutor.shutdownNow();
     }
+  }
 
-    LOGGER.info("Finished updating OAuth resources.");
+  /**
+   * Returns the resource ids of the services registered in Consul, as last seen by the watcher,
+   * or {@code null} if the catalog has not been read yet. New clients should be created with
+   * these resource ids. A client created with older ones while the catalog was changing gets the
+   * current ones at the end of the next wait time.
+   */
+  public String getResourceIds() {
+    return resourceIds;
+  }
+
+  /**
+   * Checks that a blocking query ends before the read timeout of the HTTP client. Consul adds
+   * up to a sixteenth of the wait time to it, so that the queries of many clients don't all end
+   * at once.
+   */
+  @PostConstruct
+  public void init() {
+    long waitMillis = TimeUnit.SECONDS
+        .toMillis(configurationSettingService.getConsulWatchWaitSeconds());
+    long readTimeoutMillis = configurationSettingService.getHttpClientReadTimeoutMs();
+
+    checkState(waitMillis + waitMillis / 16 < readTimeoutMillis,
+        "consul.watch.waitSeconds with the added sixteenth must be shorter than "
+            + "http.client.readTimeoutMs (%s ms)", readTimeoutMillis);
   }
 
-  private Set<String> getAvailableServices() {
+  /**
+   * Waits for the next change of the service catalog (or for the end of the wait time) and
+   * updates OAuth resources if the catalog has changed. When the first wait time after a change
+   * passes without further changes, the resource ids are applied once again, so clients created
+   * with the older ones while they were being changed get them as well. Otherwise nothing is
+   * written while the catalog stays the same.
+   */
+  void updateOAuthResources() {
     ResponseEntity<ServicesListDto> response = restTemplate.getForEntity(
         getConsulServicesUrl(),
         ServicesListDto.class
     );
 
-    ServicesListDto services = response.getBody();
+    long index = NumberUtils.toLong(response.getHeaders().getFirst(CONSUL_INDEX_HEADER), 0);
+    if (index > 0 && index == lastIndex) {
+      // the wait time has passed without changes
+      if (reapplyResourceIds) {
+        updateClients(resourceIds);
+        reapplyResourceIds = false;
+      }
+      return;
+    }
+
+    // an index that goes backwards (e.g. after a restart of Consul) starts the watch again
+    lastIndex = index < lastIndex ? 0 : index;
+
+    String services = getAvailableServices(response.getBody());
+    if (services.equals(resourceIds)) {
+      return;
+    }
+
+    LOGGER.info("Updating OAuth resources to: {}", services);
+    updateClients(services);
+    // set only once the clients have them, so a failed update is retried
+    resourceIds = services;
+    reapplyResourceIds = true;
+  }
+
+  private void updateClients(String services) {
+    List<String> clientIds = clientRepository.updateResourceIds(services);
+    clientIds.forEach(clientDetailsService::evict);
+
+    if (!clientIds.isEmpty()) {
+      LOGGER.info("Updated resources of {} clients.", clientIds.size());
+    }
+  }
+
+  private void watch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        updateOAuthResources();
+      } catch (RuntimeException exp) {
+        long retryMillis = configurationSettingService.getConsulWatchRetryMillis();
+        LOGGER.warn("Failed to watch Consul services, retrying in {} ms", retryMillis, exp);
+        lastIndex = 0;
+
+        try {
+          Thread.sleep(retryMillis);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private String getAvailableServices(ServicesListDto services) {
     String serviceTag = configurationSettingService.getConsulServiceTag();
 
     return services.keySet()
         .stream()
         .filter(service -> services.isTagged(service, serviceTag))
-        .collect(Collectors.toSet());
+        .sorted()
+        .collect(Collectors.joining(SERVICE_SEPARATOR));
   }
 
   private String getConsulServicesUrl() {
@@ -95,7 +199,9 @@ public class ConsulCommunicationService {
     String host = configurationSettingService.getConsulHost();
     int port = configurationSettingService.getConsulPort();
     String services = configurationSettingService.getConsulServicesUrl();
+    long waitSeconds = configurationSettingService.getConsulWatchWaitSeconds();
 
-    return String.format("%s://%s:%d%s", protocol, host, port, services);
+    return String.format("%s://%s:%d%s?index=%d&wait=%ds",
+        protocol, host, port, services, lastIndex, waitSeconds);
   }
 }
@@ -0,0 +1,71 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service.notification;
+
+import java.util.List;
+import java.util.UUID;
+import org.openlmis.auth.domain.OutboxNotification;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.repository.OutboxNotificationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps emails that have to be sent to users. An email is stored in the same transaction as the
+ * change that caused it, and {@link NotificationOutboxDispatcher} sends it later, so the request
+ * does not wait for the notification service and does not fail when it is unavailable.
+ */
+@Service
+public class NotificationOutbox {
+
+  @Autowired
+  private OutboxNotificationRepository outboxNotificationRepository;
+
+  /**
+   * Stores an email for the given user. The message keys are resolved in the current locale
+   * when the email is sent. A pending email with the same deduplication key is replaced.
+   *
+   * @param user             receiver of the email
+   * @param deduplicationKey the key of emails that replace each other
+   * @param subjectKey       the message key of the subject
+   * @param bodyKey          the message key of the content
+   * @param bodyUrl          the link passed to the content
+   */
+  @Transactional
+  public void enqueue(User user, String deduplicationKey, String subjectKey, String bodyKey,
+      String bodyUrl) {
+    outboxNotificationRepository.enqueue(UUID.randomUUID(), user.getId(), deduplicationKey,
+        subjectKey, bodyKey, bodyUrl, LocaleContextHolder.getLocale().toLanguageTag());
+  }
+
+  @Transactional
+  public List<OutboxNotification> claim(int batchSize, long leaseSeconds) {
+    return outboxNotificationRepository.claimDue(batchSize, leaseSeconds);
+  }
+
+  @Transactional
+  public void reschedule(UUID id, long delaySeconds) {
+    outboxNotificationRepository.reschedule(id, delaySeconds);
+  }
+
+  @Transactional
+  public void remove(UUID id) {
+    outboxNotificationRepository.remove(id);
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service.notification;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.openlmis.auth.domain.OutboxNotification;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
+import org.openlmis.auth.exception.ExternalApiException;
+import org.openlmis.auth.i18n.ExposedMessageSource;
+import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.referencedata.UserReferenceDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends the emails kept in the {@link NotificationOutbox}. Each run claims a batch of due
+ * emails and sends them one by one. An email that can't be sent is tried again later, each time
+ * after a twice longer delay, until the maximum number of attempts is reached. An email rejected
+ * by the notification service is not tried again.
+ */
+@Component
+public class NotificationOutboxDispatcher {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(NotificationOutboxDispatcher.class);
+
+  // how long a claimed email is hidden from other instances
+  static final long LEASE_SECONDS = 300;
+  static final long MAX_DELAY_SECONDS = 3600;
+
+  @Autowired
+  private NotificationOutbox notificationOutbox;
+
+  @Autowired
+  private NotificationService notificationService;
+
+  @Autowired
+  private UserReferenceDataService userReferenceDataService;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private ExposedMessageSource messageSource;
+
+  @Value("${notification.outbox.batchSize}")
+  private int batchSize;
+
+  @Value("${notification.outbox.maxAttempts}")
+  private int maxAttempts;
+
+  @Value("${notification.outbox.backoffSeconds}")
+  private long backoffSeconds;
+
+  /**
+   * Sends the next batch of due emails.
+   */
+  @Scheduled(fixedDelayString = "${notification.outbox.intervalMillis}")
+  public void dispatch() {
+    List<OutboxNotification> notifications;
+
+    try {
+      notifications = notificationOutbox.claim(batchSize, LEASE_SECONDS);
+    } catch (RuntimeException exp) {
+      LOGGER.warn("Could not read the notification outbox", exp);
+      return;
+    }
+
+    notifications.forEach(this::dispatch);
+  }
+
+  private void dispatch(OutboxNotification notification) {
+    try {
+      send(notification);
+      notificationOutbox.remove(notification.getId());
+    } catch (ExternalApiException exp) {
+      LOGGER.error("The notification service rejected email {}", notification.getId(), exp);
+      notificationOutbox.remove(notification.getId());
+    } catch (RuntimeException exp) {
+      if (notification.getAttempts() >= maxAttempts) {
+        LOGGER.error("Giving up sending email {} after {} attempts",
+            notification.getId(), notification.getAttempts(), exp);
+        notificationOutbox.remove(notification.getId());
+      } else {
+        LOGGER.warn("Could not send email {}, will try again", notification.getId(), exp);
+        notificationOutbox.reschedule(notification.getId(), getDelay(notification));
+      }
+    }
+  }
+
+  private void send(OutboxNotification notification) {
+    Optional<User> user = userRepository.findById(notification.getUserId());
+    UserMainDetailsDto referenceDataUser = user.isPresent()
+        ? userReferenceDataService.findOne(notification.getUserId())
+        : null;
+
+    if (null == referenceDataUser) {
+      LOGGER.warn("User {} of email {} does not exist any longer",
+          notification.getUserId(), notification.getId());
+      return;
+    }
+
+    Locale locale = Locale.forLanguageTag(notification.getLocale());
+
+    String[] bodyMsgArgs = {
+        referenceDataUser.getFirstName(),
+        referenceDataUser.getLastName(),
+        notification.getBodyUrl()
+    };
+    String[] subjectMsgArgs = {};
+
+    notificationService.notify(
+        user.get(),
+        messageSource.getMessage(notification.getSubjectKey(), subjectMsgArgs, locale),
+        messageSource.getMessage(notification.getBodyKey(), bodyMsgArgs, locale)
+    );
+  }
+
+  private long getDelay(OutboxNotification notification) {
+    int exponent = Math.min(notification.getAttempts() - 1, 30);
+    return Math.min(backoffSeconds << exponent, MAX_DELAY_SECONDS);
+  }
+
+}
@@ -15,8 +15,12 @@
 
 package org.openlmis.auth.service.notification;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
-import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import lombok.Getter;
 import org.openlmis.auth.service.BaseCommunicationService;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,6 +34,27 @@ public class UserContactDetailsNotificationService extends
   @Value("${service.url}")
   private String serviceUrl;
 
+  @Value("${notification.contactDetails.unknownEmailCache.maxSize}")
+  private long unknownEmailCacheMaxSize;
+
+  @Value("${notification.contactDetails.unknownEmailCache.ttlSeconds}")
+  private long unknownEmailCacheTtlSeconds;
+
+  // emails without contact details, so repeated requests for them are not sent again
+  private Cache<String, Boolean> unknownEmails;
+
+  /**
+   * Creates the cache of unknown emails.
+   */
+  @PostConstruct
+  public void init() {
+    unknownEmails = CacheBuilder
+        .newBuilder()
+        .maximumSize(unknownEmailCacheMaxSize)
+        .expireAfterWrite(unknownEmailCacheTtlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
   @Override
   protected String getUrl() {
     return "/api/userContactDetails";
@@ -46,12 +71,27 @@ public class UserContactDetailsNotificationService extends
   }
 
   /**
-   * Finds user contact details by the passed email address.
+   * Finds user contact details by the passed email address. Only the first match is requested
+   * from the notification service, and an email without contact details is remembered for a
+   * short time, so repeated requests for it are answered without calling the service.
    */
-  public List<UserContactDetailsDto> findByEmail(String email) {
+  public Optional<UserContactDetailsDto> findOneByEmail(String email) {
+    if (null != unknownEmails.getIfPresent(email)) {
+      return Optional.empty();
+    }
+
     ImmutableMap<String, Object> parameters = ImmutableMap
-        .of("email", email, "page", 0, "size", Integer.MAX_VALUE);
-    return getPage("", parameters).getContent();
+        .of("email", email, "page", 0, "size", 1);
+    Optional<UserContactDetailsDto> found = getPage("", parameters)
+        .getContent()
+        .stream()
+        .findFirst();
+
+    if (!found.isPresent()) {
+      unknownEmails.put(email, Boolean.TRUE);
+    }
+
+    return found;
   }
 
 }
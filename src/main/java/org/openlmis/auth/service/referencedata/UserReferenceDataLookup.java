@@ -0,0 +1,76 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service.referencedata;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
+
+/**
+ * Remembers reference data users that were already fetched, including the information that a
+ * user does not exist, so a user is never fetched twice. An instance is meant to live only as long
+ * as the request that uses it. Users can be fetched in bulk up front and any user that was not
+ * fetched that way is fetched on its own when needed.
+ */
+public class UserReferenceDataLookup {
+  private final UserReferenceDataService userReferenceDataService;
+  private final Map<UUID, Optional<UserMainDetailsDto>> users = new ConcurrentHashMap<>();
+
+  public UserReferenceDataLookup(UserReferenceDataService userReferenceDataService) {
+    this.userReferenceDataService = userReferenceDataService;
+  }
+
+  /**
+   * Fetches the users with the given ids that were not fetched yet, in a single request.
+   *
+   * @param ids ids of users that will be needed
+   */
+  public void prefetch(Collection<UUID> ids) {
+    List<UUID> missing = ids
+        .stream()
+        .filter(id -> null != id && !users.containsKey(id))
+        .distinct()
+        .collect(Collectors.toList());
+
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    userReferenceDataService
+        .findByIds(missing)
+        .forEach(user -> users.put(user.getId(), Optional.of(user)));
+
+    // all pages of the answer were read, so users that are not in it don't exist
+    missing.forEach(id -> users.putIfAbsent(id, Optional.empty()));
+  }
+
+  /**
+   * Returns the user with the given id, fetching it if it was not fetched yet.
+   *
+   * @param id id of the user
+   * @return the user or {@code null} if it does not exist
+   */
+  public UserMainDetailsDto find(UUID id) {
+    return users
+        .computeIfAbsent(id, key -> Optional.ofNullable(userReferenceDataService.findOne(key)))
+        .orElse(null);
+  }
+}
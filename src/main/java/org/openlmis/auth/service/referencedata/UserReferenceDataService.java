@@ -15,7 +15,12 @@
 
 package org.openlmis.auth.service.referencedata;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import lombok.Getter;
@@ -34,6 +39,9 @@ public class UserReferenceDataService extends BaseCommunicationService<UserMainD
   @Value("${service.url}")
   private String serviceUrl;
 
+  @Value("${service.users.pageSize}")
+  private int pageSize;
+
   protected String getUrl() {
     return "/api/users/";
   }
@@ -75,4 +83,30 @@ public class UserReferenceDataService extends BaseCommunicationService<UserMainD
     return users.getContent().isEmpty() ? null : users.getContent().get(0);
   }
 
+  /**
+   * This method retrieves users with the given ids. The ids are sent in chunks of at most the
+   * configured page size and every page of the result is read, so all users that exist are
+   * returned even if the reference data service returns smaller pages than requested.
+   *
+   * @param ids ids of users to find.
+   * @return users that were found, users that do not exist are skipped.
+   */
+  public List<UserMainDetailsDto> findByIds(Collection<UUID> ids) {
+    List<UserMainDetailsDto> users = new ArrayList<>();
+
+    for (List<UUID> chunk : Lists.partition(new ArrayList<>(ids), pageSize)) {
+      Map<String, Object> payload = Collections.singletonMap("id", chunk);
+      Page<UserMainDetailsDto> page;
+      int number = 0;
+
+      do {
+        Map<String, Object> parameters = ImmutableMap.of("page", number++, "size", chunk.size());
+        page = getPage("search", parameters, payload);
+        users.addAll(page.getContent());
+      } while (page.hasNext());
+    }
+
+    return users;
+  }
+
 }
@@ -35,7 +35,9 @@ import org.openlmis.auth.repository.ApiKeyRepository;
 import org.openlmis.auth.repository.ClientRepository;
 import org.openlmis.auth.service.AccessTokenService;
 import org.openlmis.auth.service.ApiKeySettings;
+import org.openlmis.auth.service.ClientDetailsServiceImpl;
 import org.openlmis.auth.service.PermissionService;
+import org.openlmis.auth.service.TokenRevocationService;
 import org.openlmis.auth.service.consul.ConsulCommunicationService;
 import org.openlmis.auth.util.AuthenticationHelper;
 import org.openlmis.auth.util.Pagination;
@@ -47,7 +49,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.stereotype.Controller;
@@ -73,9 +74,15 @@ public class ApiKeyController {
   @Autowired
   private AccessTokenService accessTokenService;
 
+  @Autowired
+  private TokenRevocationService tokenRevocationService;
+
   @Autowired
   private ClientRepository clientRepository;
 
+  @Autowired
+  private ClientDetailsServiceImpl clientDetailsService;
+
   @Autowired
   private ConsulCommunicationService consulCommunicationService;
 
@@ -117,11 +124,10 @@ public class ApiKeyController {
     Client client = new Client(
         clientId, clientSecret, "TRUSTED_CLIENT", "client_credentials", "read,write", 0
     );
+    client.setResourceIds(consulCommunicationService.getResourceIds());
 
     clientRepository.saveAndFlush(client);
-
-    profiler.start("UPDATE_OAUTH_RESOURCES");
-    consulCommunicationService.updateOAuthResources();
+    clientDetailsService.evict(clientId);
 
     profiler.start("OBTAIN_TOKEN");
     UUID token = accessTokenService.obtainToken(client.getClientId());
@@ -200,13 +206,14 @@ public class ApiKeyController {
         .orElseThrow(() -> new NotFoundException(ERROR_CLIENT_NOT_FOUND));
 
     profiler.start("REMOVE_ACCESS_TOKEN");
-    tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(token.toString()));
+    tokenRevocationService.revokeToken(token.toString());
 
     profiler.start("REMOVE_API_KEY");
     apiKeyRepository.deleteById(token);
 
     profiler.start("REMOVE_CLIENT");
     clientRepository.delete(client);
+    clientDetailsService.evict(clientId);
 
     profiler.stop().log();
   }
@@ -0,0 +1,94 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.web;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.security.oauth2.provider.endpoint.CheckTokenEndpoint;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds caching headers to successful check_token responses, so a cache in front of a resource
+ * service can answer repeated checks of the same token. The response may be kept privately for
+ * the configured number of seconds, but never longer than the token is valid. The ETag lets the
+ * cache revalidate a stored response without transferring it again.
+ */
+@ControllerAdvice(assignableTypes = CheckTokenEndpoint.class)
+public class CheckTokenCacheAdvice implements ResponseBodyAdvice<Object> {
+  private static final String TOKEN = "token";
+
+  @Value("${token.checkToken.maxAgeSeconds}")
+  private long maxAgeSeconds;
+
+  @Override
+  public boolean supports(MethodParameter returnType,
+      Class<? extends HttpMessageConverter<?>> converterType) {
+    return Map.class.isAssignableFrom(returnType.getParameterType());
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType,
+      MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request, ServerHttpResponse response) {
+    if (!(body instanceof Map) || !(request instanceof ServletServerHttpRequest)) {
+      return body;
+    }
+
+    Map<?, ?> claims = (Map<?, ?>) body;
+    String token = ((ServletServerHttpRequest) request).getServletRequest().getParameter(TOKEN);
+    String etag = '"' + DigestUtils.md5Hex(token + new TreeMap<>(claims)) + '"';
+
+    HttpHeaders headers = response.getHeaders();
+    headers.setCacheControl(getCacheControl(claims.get(AccessTokenConverter.EXP)));
+    headers.setETag(etag);
+
+    if (request.getHeaders().getIfNoneMatch().contains(etag)) {
+      response.setStatusCode(HttpStatus.NOT_MODIFIED);
+      return null;
+    }
+
+    return body;
+  }
+
+  private CacheControl getCacheControl(Object exp) {
+    long maxAge = maxAgeSeconds;
+
+    if (exp instanceof Number) {
+      long remaining = ((Number) exp).longValue()
+          - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+      maxAge = Math.min(maxAge, remaining);
+    }
+
+    return maxAge > 0
+        ? CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePrivate()
+        : CacheControl.noCache().cachePrivate();
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.web;
+
+import java.util.List;
+import java.util.Map;
+import org.openlmis.auth.service.TokenIntrospectionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Controller
+@RequestMapping("/api")
+public class TokenIntrospectionController {
+  @Autowired
+  private TokenIntrospectionService tokenIntrospectionService;
+
+  /**
+   * Checks many access tokens at once. Works like the check_token endpoint, but returns the
+   * result of each token instead of an error for an invalid one.
+   *
+   * @param tokens the values of access tokens to check
+   * @return the results in the order of the given tokens
+   */
+  @RequestMapping(value = "/tokens/introspection", method = RequestMethod.POST)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public List<Map<String, Object>> introspectTokens(@RequestBody List<String> tokens) {
+    return tokenIntrospectionService.introspect(tokens);
+  }
+
+}
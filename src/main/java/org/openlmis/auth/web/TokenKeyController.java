@@ -0,0 +1,56 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.web;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openlmis.auth.security.JwtSigningKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Publishes the public key used to sign JWT access tokens, so other services can verify the
+ * tokens locally. Available only when access tokens are issued as JWTs.
+ */
+@RestController
+@ConditionalOnProperty(name = "token.format", havingValue = "jwt")
+public class TokenKeyController {
+  private static final CacheControl CACHE_CONTROL = CacheControl
+      .maxAge(1, TimeUnit.HOURS)
+      .cachePublic();
+
+  @Autowired
+  private JwtSigningKey jwtSigningKey;
+
+  /**
+   * Returns the JWT signing key as a JSON Web Key Set.
+   */
+  @GetMapping("/api/oauth/token_keys")
+  public ResponseEntity<Map<String, List<Map<String, Object>>>> getTokenKeys() {
+    return ResponseEntity
+        .ok()
+        .cacheControl(CACHE_CONTROL)
+        .body(ImmutableMap.of("keys", Collections.singletonList(jwtSigningKey.toJwk())));
+  }
+
+}
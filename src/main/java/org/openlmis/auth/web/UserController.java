@@ -17,32 +17,44 @@
 package org.openlmis.auth.web;
 
 import static org.openlmis.auth.i18n.MessageKeys.ERROR_FIELD_REQUIRED;
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_PAGE_NEGATIVE;
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_SIZE_NOT_POSITIVE;
+import static org.openlmis.auth.i18n.MessageKeys.ERROR_SIZE_NULL;
 import static org.openlmis.auth.i18n.MessageKeys.ERROR_TOKEN_EXPIRED;
 import static org.openlmis.auth.i18n.MessageKeys.ERROR_TOKEN_INVALID;
 import static org.openlmis.auth.i18n.MessageKeys.USERS_LOGOUT_CONFIRMATION;
 import static org.openlmis.auth.i18n.MessageKeys.USER_NOT_FOUND;
 import static org.openlmis.auth.i18n.MessageKeys.USER_NOT_FOUND_BY_EMAIL;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import javax.servlet.http.HttpServletResponse;
 
 import org.openlmis.auth.domain.PasswordResetToken;
 import org.openlmis.auth.domain.User;
 import org.openlmis.auth.dto.PasswordResetRequestDto;
-import org.openlmis.auth.dto.SaveBatchResultDto;
+import org.openlmis.auth.dto.PermissionCheckDto;
+import org.openlmis.auth.dto.PermissionCheckResultDto;
 import org.openlmis.auth.dto.UnlockResponseDto;
 import org.openlmis.auth.dto.UserAuthDetailsResponseDto;
+import org.openlmis.auth.dto.UserDeleteResponseDto;
 import org.openlmis.auth.dto.UserDto;
+import org.openlmis.auth.exception.ResponseAbortedException;
 import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.i18n.ExposedMessageSource;
 import org.openlmis.auth.repository.PasswordResetTokenRepository;
 import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.PasswordHashingService;
 import org.openlmis.auth.service.PasswordResetNotifier;
 import org.openlmis.auth.service.PasswordResetRegistryService;
 import org.openlmis.auth.service.PermissionService;
+import org.openlmis.auth.service.TokenRevocationService;
+import org.openlmis.auth.service.UserBatchService;
+import org.openlmis.auth.service.UserExportService;
 import org.openlmis.auth.service.UserService;
 import org.openlmis.auth.service.notification.UserContactDetailsDto;
 import org.openlmis.auth.service.notification.UserContactDetailsNotificationService;
@@ -52,17 +64,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
-import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.CollectionUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.Validator;
 import org.springframework.web.bind.WebDataBinder;
@@ -70,6 +81,7 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -83,6 +95,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 public class UserController {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(UserController.class);
+  private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
 
   @Autowired
   private UserRepository userRepository;
@@ -90,6 +103,12 @@ public class UserController {
   @Autowired
   private UserService userService;
 
+  @Autowired
+  private UserBatchService userBatchService;
+
+  @Autowired
+  private UserExportService userExportService;
+
   @Autowired
   private Validator validator;
 
@@ -102,9 +121,6 @@ public class UserController {
   @Autowired
   private ExposedMessageSource messageSource;
 
-  @Autowired
-  private TokenStore tokenStore;
-
   @Autowired
   private UserDtoValidator userDtoValidator;
   
@@ -120,6 +136,12 @@ public class UserController {
   @Autowired
   private PasswordResetRegistryService passwordResetRegistryService;
 
+  @Autowired
+  private PasswordHashingService passwordHashingService;
+
+  @Autowired
+  private TokenRevocationService tokenRevocationService;
+
   @InitBinder
   protected void initBinder(WebDataBinder binder) {
     binder.setValidator(this.validator);
@@ -149,25 +171,18 @@ public class UserController {
 
   /**
    * Custom endpoint for creating and updating multiple users.
-   * Encrypts password with BCryptPasswordEncoder.
+   * Encrypts password with BCryptPasswordEncoder. Users are saved in chunks, each in its own
+   * transaction, so the request itself does not run in a transaction.
    *
    * @return saved list of users.
    */
   @RequestMapping(value = "/users/auth/batch", method = RequestMethod.POST)
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public UserAuthDetailsResponseDto saveUsers(@RequestBody List<UserDto> users) {
     permissionService.canManageUsers(null);
-    List<UserAuthDetailsResponseDto.UserAuthResponse> successfulResults = new ArrayList<>();
-    List<UserAuthDetailsResponseDto.UserAuthResponse> failedResults = new ArrayList<>();
-    for (UserDto dto : users) {
-      SaveBatchResultDto<UserAuthDetailsResponseDto.UserAuthResponse> result =
-           userService.saveAuthUserDetails(dto);
-      successfulResults.addAll(result.getSuccessfulResults());
-      failedResults.addAll(result.getFailedResults());
-    }
-
-    return new UserAuthDetailsResponseDto(successfulResults, failedResults);
+    return userBatchService.saveAuthUsers(users);
   }
 
   /**
@@ -200,7 +215,7 @@ public class UserController {
   public String revokeToken(OAuth2Authentication auth) {
     OAuth2AuthenticationDetails details = (OAuth2AuthenticationDetails) auth.getDetails();
     String token = details.getTokenValue();
-    tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(token));
+    tokenRevocationService.revokeToken(token);
 
     String[] msgArgs = {};
     return messageSource
@@ -229,9 +244,9 @@ public class UserController {
       throw new ValidationMessageException(USER_NOT_FOUND);
     }
 
-    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
-    user.setPassword(encoder.encode(passwordResetRequestDto.getNewPassword()));
+    user.setPassword(passwordHashingService.encode(passwordResetRequestDto.getNewPassword()));
     userRepository.save(user);
+    tokenRevocationService.revokeUserTokens(user.getUsername());
     LOGGER.debug("Password updated for user %s", username);
   }
 
@@ -241,17 +256,18 @@ public class UserController {
   @RequestMapping(value = "/users/auth/forgotPassword", method = RequestMethod.POST)
   @ResponseStatus(HttpStatus.OK)
   public void forgotPassword(@RequestParam(value = "email") String email) {
-    List<UserContactDetailsDto> found = userContactDetailsNotificationService.findByEmail(email);
+    Optional<UserContactDetailsDto> found = userContactDetailsNotificationService
+        .findOneByEmail(email);
 
-    if (CollectionUtils.isEmpty(found)) {
+    if (!found.isPresent()) {
       LOGGER.error("User with provided email does not exist.",
           new ValidationMessageException(USER_NOT_FOUND_BY_EMAIL));
       return;
     }
 
-    Optional<User> optionalUser = userRepository.findById(found.get(0).getReferenceDataUserId());
+    Optional<User> optionalUser = userRepository.findById(found.get().getReferenceDataUserId());
     if (!optionalUser.isPresent()) {
-      LOGGER.error("User with ID {} does not exist.", found.get(0).getReferenceDataUserId(),
+      LOGGER.error("User with ID {} does not exist.", found.get().getReferenceDataUserId(),
           new ValidationMessageException(USER_NOT_FOUND));
     } else {
       passwordResetRegistryService.checkPasswordResetLimit(optionalUser.get());
@@ -277,9 +293,9 @@ public class UserController {
     }
 
     User user = token.getUser();
-    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
-    user.setPassword(encoder.encode(passwordChangeRequest.getNewPassword()));
+    user.setPassword(passwordHashingService.encode(passwordChangeRequest.getNewPassword()));
     userRepository.save(user);
+    tokenRevocationService.revokeUserTokens(user.getUsername());
 
     passwordResetTokenRepository.delete(token);
   }
@@ -303,18 +319,69 @@ public class UserController {
   }
 
   /**
-   * Gets all user auth details.
+   * Gets user auth details in the order of user ids.
    *
    * @param lockedOut optional filter; when provided, only users with the matching lockout state
    *                  are returned. When omitted, no filtering is applied.
-   * @return all auth user details dto objects
+   * @param afterId   optional cursor; when provided, only users with greater ids are returned.
+   *                  Pass the id of the last user of the previous response to get the next one.
+   * @param page      optional number of the page, starting with 0, requires the size
+   * @param size      optional maximum number of users to return. When omitted, all matching
+   *                  users are returned.
+   * @return auth user details dto objects
    */
   @GetMapping(value = "/users/auth/batch")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
   public List<UserDto> getAllAuthUsers(
-      @RequestParam(value = "lockedOut", required = false) Boolean lockedOut) {
-    return userService.getAuthUsers(lockedOut);
+      @RequestParam(value = "lockedOut", required = false) Boolean lockedOut,
+      @RequestParam(value = "afterId", required = false) UUID afterId,
+      @RequestParam(value = "page", required = false) Integer page,
+      @RequestParam(value = "size", required = false) Integer size) {
+    if (null != size && size < 1) {
+      throw new ValidationMessageException(ERROR_SIZE_NOT_POSITIVE);
+    }
+
+    if (null != page && null == size) {
+      throw new ValidationMessageException(ERROR_SIZE_NULL);
+    }
+
+    if (null != page && page < 0) {
+      throw new ValidationMessageException(ERROR_PAGE_NEGATIVE);
+    }
+
+    Pageable pageable = null == size
+        ? Pageable.unpaged()
+        : PageRequest.of(null == page ? 0 : page, size);
+
+    return userService.getAuthUsers(lockedOut, afterId, pageable);
+  }
+
+  /**
+   * Exports all auth users as newline delimited JSON, one user (without password) per line in
+   * the order of user ids. The users are streamed, so the response is not limited by the memory
+   * available to the service. If the export fails after the first users were sent, the response
+   * is aborted instead of completed with an error.
+   */
+  @GetMapping(value = "/users/auth/export", produces = NDJSON_CONTENT_TYPE)
+  public void exportAuthUsers(HttpServletResponse response) throws IOException {
+    permissionService.canManageUsers(null);
+
+    response.setStatus(HttpStatus.OK.value());
+    response.setContentType(NDJSON_CONTENT_TYPE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+    try {
+      userExportService.exportAuthUsers(response.getOutputStream());
+    } catch (IOException | RuntimeException ex) {
+      if (!response.isCommitted()) {
+        throw ex;
+      }
+
+      // part of the users has been sent already, so an error body would be appended to them
+      LOGGER.error("Export of auth users failed after the response was committed", ex);
+      throw new ResponseAbortedException(ex);
+    }
   }
 
   /**
@@ -337,14 +404,39 @@ public class UserController {
     return userService.unlockUsers(userIds, actor);
   }
 
+  /**
+   * Checks the given rights of the current user at once.
+   *
+   * @param checks rights to check, each optionally with the id of the user it is checked for
+   * @return decision for each of the given checks, in the order of the given checks
+   */
+  @PostMapping(value = "/users/auth/permissions")
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public List<PermissionCheckResultDto> checkPermissions(
+      @RequestBody List<PermissionCheckDto> checks) {
+    if (checks == null) {
+      throw new ValidationMessageException(new Message(ERROR_FIELD_REQUIRED, "checks"));
+    }
+
+    if (checks.stream().anyMatch(check -> null == check.getRightName())) {
+      throw new ValidationMessageException(new Message(ERROR_FIELD_REQUIRED, "rightName"));
+    }
+
+    return permissionService.hasRights(checks);
+  }
+
   /**
    * Deletes auth users.
    *
    * @param userIds user ids for which auth users will be deleted
+   * @return ids of the deleted users and of the users that were not found
    */
   @DeleteMapping(value = "/users/auth/batch")
   @ResponseStatus(HttpStatus.OK)
-  public void deleteAuthUsersByIds(@RequestBody Set<UUID> userIds) {
-    userService.deleteByUserIds(userIds);
+  @ResponseBody
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public UserDeleteResponseDto deleteAuthUsersByIds(@RequestBody Set<UUID> userIds) {
+    return userService.deleteByUserIds(userIds);
   }
 }
@@ -23,6 +23,7 @@ import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
 import org.openlmis.auth.i18n.MessageKeys;
 import org.openlmis.auth.repository.UserRepository;
 import org.openlmis.auth.service.PermissionService;
+import org.openlmis.auth.service.referencedata.UserReferenceDataLookup;
 import org.openlmis.auth.service.referencedata.UserReferenceDataService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -72,13 +73,23 @@ public class UserDtoValidator extends BaseValidator {
    */
   @Override
   public void validate(Object target, Errors errors) {
+    validate((UserDto) target, errors, new UserReferenceDataLookup(userReferenceDataService));
+  }
+
+  /**
+   * Validates the given user. Reference data users are taken from the given lookup, so when many
+   * users are validated, their reference data users can be fetched at once and only once.
+   *
+   * @param dto    the user that is to be validated
+   * @param errors contextual state about the validation process
+   * @param lookup reference data users fetched for the current request
+   */
+  public void validate(UserDto dto, Errors errors, UserReferenceDataLookup lookup) {
     rejectIfEmptyOrWhitespace(errors, ID, MessageKeys.ERROR_FIELD_REQUIRED);
     rejectIfEmptyOrWhitespace(errors, USERNAME, MessageKeys.ERROR_FIELD_REQUIRED);
 
     if (!errors.hasErrors()) {
-      UserDto dto = (UserDto) target;
-
-      verifyReferenceDataUserId(dto, errors);
+      verifyReferenceDataUserId(dto, errors, lookup);
 
       User db = userRepository.findById(dto.getId()).orElse(null);
 
@@ -97,9 +108,9 @@ public class UserDtoValidator extends BaseValidator {
     }
   }
 
-  private void verifyReferenceDataUserId(UserDto dto, Errors errors) {
-    UserMainDetailsDto referenceDataUser = userReferenceDataService
-        .findOne(dto.getId());
+  private void verifyReferenceDataUserId(UserDto dto, Errors errors,
+      UserReferenceDataLookup lookup) {
+    UserMainDetailsDto referenceDataUser = lookup.find(dto.getId());
 
     if (null == referenceDataUser) {
       rejectValue(errors, ID, MessageKeys.ERROR_USER_NOT_FOUND);
@@ -26,6 +26,7 @@ import org.openlmis.auth.exception.ExternalApiException;
 import org.openlmis.auth.exception.NotFoundException;
 import org.openlmis.auth.exception.PermissionMessageException;
 import org.openlmis.auth.exception.ServerException;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
 import org.openlmis.auth.exception.TooManyRequestsMessageException;
 import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.util.Message;
@@ -146,4 +147,18 @@ public class WebErrorHandling extends AbstractErrorHandling {
     return getLocalizedMessage(ex.asMessage());
   }
 
+  /**
+   * Handles service unavailable exception.
+   *
+   * @param ex the service unavailable exception
+   * @return the user-oriented error message.
+   */
+  @ExceptionHandler(ServiceUnavailableMessageException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  @ResponseBody
+  public Message.LocalizedMessage handleServiceUnavailableMessageException(
+      ServiceUnavailableMessageException ex) {
+    return getLocalizedMessage(ex.asMessage());
+  }
+
 }
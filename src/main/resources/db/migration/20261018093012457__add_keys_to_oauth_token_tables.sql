@@ -0,0 +1,8 @@
+ALTER TABLE oauth_access_token ADD CONSTRAINT oauth_access_token_pkey PRIMARY KEY (tokenid);
+
+CREATE INDEX oauth_access_token_authenticationid_idx ON oauth_access_token (authenticationid);
+CREATE INDEX oauth_access_token_username_idx ON oauth_access_token (username);
+CREATE INDEX oauth_access_token_clientid_idx ON oauth_access_token (clientid);
+CREATE INDEX oauth_access_token_refreshtoken_idx ON oauth_access_token (refreshtoken);
+
+ALTER TABLE oauth_refresh_token ADD CONSTRAINT oauth_refresh_token_pkey PRIMARY KEY (tokenid);
@@ -0,0 +1,3 @@
+ALTER TABLE oauth_refresh_token ADD COLUMN username character varying(256);
+
+CREATE INDEX oauth_refresh_token_username_idx ON oauth_refresh_token (username);
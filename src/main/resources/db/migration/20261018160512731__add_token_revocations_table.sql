@@ -0,0 +1,8 @@
+CREATE TABLE token_revocations (
+    version BIGSERIAL PRIMARY KEY,
+    tokenId VARCHAR(32),
+    userName TEXT,
+    revokedDate TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX token_revocations_revokeddate_idx ON token_revocations (revokedDate);
@@ -0,0 +1,16 @@
+CREATE TABLE notification_outbox (
+    id UUID PRIMARY KEY,
+    userId UUID NOT NULL,
+    deduplicationKey TEXT NOT NULL UNIQUE,
+    subjectKey TEXT NOT NULL,
+    bodyKey TEXT NOT NULL,
+    bodyUrl TEXT NOT NULL,
+    locale TEXT NOT NULL,
+    attempts INTEGER NOT NULL,
+    nextAttemptDate TIMESTAMP WITH TIME ZONE NOT NULL,
+    createdDate TIMESTAMP WITH TIME ZONE NOT NULL,
+
+    CONSTRAINT fk_user FOREIGN KEY (userId) REFERENCES auth_users (id) ON DELETE CASCADE
+);
+
+CREATE INDEX notification_outbox_nextattemptdate_idx ON notification_outbox (nextAttemptDate);
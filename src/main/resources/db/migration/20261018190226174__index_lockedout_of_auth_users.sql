@@ -0,0 +1 @@
+CREATE INDEX auth_users_lockedout_id_idx ON auth_users (lockedOut, id);
@@ -0,0 +1,14 @@
+CREATE TABLE token_revocation_versions (
+    latestVersion BIGINT NOT NULL,
+    purgedVersion BIGINT NOT NULL
+);
+
+INSERT INTO token_revocation_versions (latestVersion, purgedVersion)
+SELECT s.latestVersion, COALESCE(r.oldestVersion - 1, s.latestVersion)
+FROM (SELECT CASE WHEN is_called THEN last_value ELSE 0 END AS latestVersion
+        FROM token_revocations_version_seq) s,
+    (SELECT MIN(version) AS oldestVersion FROM token_revocations) r;
+
+ALTER TABLE token_revocations ALTER COLUMN version DROP DEFAULT;
+
+DROP SEQUENCE token_revocations_version_seq;
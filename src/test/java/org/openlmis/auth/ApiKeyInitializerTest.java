@@ -20,6 +20,8 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -37,6 +39,7 @@ import org.openlmis.auth.domain.ApiKey;
 import org.openlmis.auth.domain.ClientDetails;
 import org.openlmis.auth.repository.ApiKeyRepository;
 import org.openlmis.auth.util.Pagination;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -112,4 +115,16 @@ public class ApiKeyInitializerTest {
     assertThat(request.getResponseTypes(), is(Collections.emptySet()));
     assertThat(request.getExtensions(), is(Collections.emptyMap()));
   }
+
+  @Test
+  public void shouldNotStoreApiKeyThatIsAlreadyInAccessTokenStore() {
+    when(apiKeyRepository.findAll(pageable)).thenReturn(firstPage);
+    when(tokenStore.readAccessToken(apiKey.getToken().toString()))
+        .thenReturn(new DefaultOAuth2AccessToken(apiKey.getToken().toString()));
+
+    initializer.run();
+
+    verify(tokenStore, never())
+        .storeAccessToken(any(OAuth2AccessToken.class), any(OAuth2Authentication.class));
+  }
 }
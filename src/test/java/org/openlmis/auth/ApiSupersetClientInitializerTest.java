@@ -31,6 +31,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openlmis.auth.domain.Client;
 import org.openlmis.auth.repository.ClientRepository;
+import org.openlmis.auth.service.ClientDetailsServiceImpl;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -46,6 +47,9 @@ public class ApiSupersetClientInitializerTest {
   @Mock
   private ClientRepository clientRepository;
 
+  @Mock
+  private ClientDetailsServiceImpl clientDetailsService;
+
   private static final String CLIENT_ID = "superset";
   private static final String CLIENT_SECRET = "secret";
   private static final String CLIENT_REDIRECT_URI = "https://superset-uat.openlmis.org/oauth-authorized/openlmis";
@@ -89,6 +93,7 @@ public class ApiSupersetClientInitializerTest {
 
     verify(clientRepository).findOneByClientId(CLIENT_ID);
     verify(clientRepository).saveAndFlush(any(Client.class));
+    verify(clientDetailsService).evict(CLIENT_ID);
 
     assertThat(client.getClientSecret()).isEqualTo(CLIENT_SECRET);
   }
@@ -101,5 +106,6 @@ public class ApiSupersetClientInitializerTest {
 
     verify(clientRepository, times(1)).findOneByClientId(CLIENT_ID);
     verify(clientRepository, times(1)).saveAndFlush(any(Client.class));
+    verify(clientDetailsService).evict(CLIENT_ID);
   }
 }
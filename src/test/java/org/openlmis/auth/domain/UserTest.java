@@ -22,15 +22,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.auth.UserDataBuilder;
 import org.openlmis.auth.dto.UserDto;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 public class UserTest {
 
   private static final String ID_FIELD = "id";
   private static final String PASSWORD_FIELD = "password";
-  private static final String ENCODER_FIELD = "ENCODER";
   private static final String UUID_TYPE_FIELD = "UUID_TYPE";
   private static final String LAST_ATTEMPT_DATE_FIELD = "lastUnsuccessfulAuthenticationAttemptDate";
 
+  private PasswordEncoder encoder = new BCryptPasswordEncoder();
   private UserDto importer;
   private User user = new UserDataBuilder().withPassword("oldPassword").build();
 
@@ -46,17 +48,17 @@ public class UserTest {
 
   @Test
   public void shouldCreateNewInstanceFromImporter() {
-    User user = User.newInstance(importer);
+    User user = User.newInstance(importer, encoder);
     assertThat(user).isEqualToIgnoringGivenFields(
-        importer, PASSWORD_FIELD, ENCODER_FIELD, UUID_TYPE_FIELD);
+        importer, PASSWORD_FIELD, UUID_TYPE_FIELD);
   }
 
   @Test
   public void shouldUpdateFromImporter() {
-    user.updateFrom(importer);
+    user.updateFrom(importer, encoder);
 
     assertThat(user).isEqualToIgnoringGivenFields(
-        importer, ID_FIELD, PASSWORD_FIELD, ENCODER_FIELD, UUID_TYPE_FIELD);
+        importer, ID_FIELD, PASSWORD_FIELD, UUID_TYPE_FIELD);
     assertThat(user.getPassword()).isNotEqualTo("oldPassword");
   }
 
@@ -64,10 +66,10 @@ public class UserTest {
   public void shouldNotChangePasswordIfImporterDoesNotHaveIt() {
     importer.setPassword(null);
 
-    user.updateFrom(importer);
+    user.updateFrom(importer, encoder);
 
     assertThat(user).isEqualToIgnoringGivenFields(
-        importer, ID_FIELD, PASSWORD_FIELD, ENCODER_FIELD, UUID_TYPE_FIELD);
+        importer, ID_FIELD, PASSWORD_FIELD, UUID_TYPE_FIELD);
     assertThat(user.getPassword()).isEqualTo("oldPassword");
   }
 
@@ -77,7 +79,7 @@ public class UserTest {
     user.export(exporter);
 
     assertThat(exporter).isEqualToIgnoringGivenFields(
-        user, ENCODER_FIELD, UUID_TYPE_FIELD, LAST_ATTEMPT_DATE_FIELD);
+        user, UUID_TYPE_FIELD, LAST_ATTEMPT_DATE_FIELD);
   }
 
   @Test
@@ -0,0 +1,177 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.auth.OAuth2AuthenticationDataBuilder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingTokenStoreTest {
+  private static final String TOKEN_VALUE = UUID.randomUUID().toString();
+
+  @Mock
+  private ExtendedTokenStore delegate;
+
+  private CachingTokenStore tokenStore;
+
+  private DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(TOKEN_VALUE);
+  private OAuth2Authentication authentication = new OAuth2AuthenticationDataBuilder()
+      .buildUserAuthentication();
+
+  @Before
+  public void setUp() {
+    tokenStore = new CachingTokenStore(delegate, 100, 60);
+  }
+
+  @Test
+  public void shouldReadAccessTokenFromDelegateOnlyOnce() {
+    given(delegate.readAccessToken(TOKEN_VALUE)).willReturn(token);
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isEqualTo(token);
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isEqualTo(token);
+
+    verify(delegate, times(1)).readAccessToken(TOKEN_VALUE);
+  }
+
+  @Test
+  public void shouldNotCacheMissingAccessToken() {
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+
+    verify(delegate, times(2)).readAccessToken(TOKEN_VALUE);
+  }
+
+  @Test
+  public void shouldReadAuthenticationFromDelegateOnlyOnce() {
+    given(delegate.readAuthentication(TOKEN_VALUE)).willReturn(authentication);
+
+    assertThat(tokenStore.readAuthentication(token)).isEqualTo(authentication);
+    assertThat(tokenStore.readAuthentication(TOKEN_VALUE)).isEqualTo(authentication);
+
+    verify(delegate, times(1)).readAuthentication(TOKEN_VALUE);
+  }
+
+  @Test
+  public void shouldCacheStoredAccessToken() {
+    tokenStore.storeAccessToken(token, authentication);
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isEqualTo(token);
+    assertThat(tokenStore.readAuthentication(TOKEN_VALUE)).isEqualTo(authentication);
+
+    verify(delegate).storeAccessToken(token, authentication);
+    verify(delegate, times(0)).readAccessToken(TOKEN_VALUE);
+    verify(delegate, times(0)).readAuthentication(TOKEN_VALUE);
+  }
+
+  @Test
+  public void shouldEvictRemovedAccessToken() {
+    tokenStore.storeAccessToken(token, authentication);
+
+    tokenStore.removeAccessToken(token);
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+    verify(delegate).removeAccessToken(token);
+    verify(delegate).readAccessToken(TOKEN_VALUE);
+  }
+
+  @Test
+  public void shouldEvictAccessTokenRemovedUsingRefreshToken() {
+    OAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken("refresh");
+    token.setRefreshToken(refreshToken);
+    tokenStore.storeAccessToken(token, authentication);
+
+    tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+    verify(delegate).removeAccessTokenUsingRefreshToken(refreshToken);
+  }
+
+  @Test
+  public void shouldPassUpdatedAccessTokensToDelegate() {
+    tokenStore.storeAccessToken(token, authentication);
+    OAuth2AccessToken updated = new DefaultOAuth2AccessToken(TOKEN_VALUE);
+
+    tokenStore.updateAccessTokens(Collections.singletonList(updated));
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isEqualTo(updated);
+    verify(delegate).updateAccessTokens(Collections.singletonList(updated));
+  }
+
+  @Test
+  public void shouldNotCacheUpdatedAccessTokenThatIsNotCached() {
+    tokenStore.storeAccessToken(token, authentication);
+    tokenStore.removeAccessToken(token);
+
+    tokenStore.updateAccessTokens(Collections.singletonList(token));
+
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+  }
+
+  @Test
+  public void shouldEvictAccessTokensRemovedByUserName() {
+    tokenStore.storeAccessToken(token, authentication);
+    given(delegate.removeTokensByUserName("admin"))
+        .willReturn(Collections.singletonList(TOKEN_VALUE));
+
+    assertThat(tokenStore.removeTokensByUserName("admin")).containsExactly(TOKEN_VALUE);
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+  }
+
+  @Test
+  public void shouldEvictAccessTokensRemovedByUserNameAgainAfterCommit() {
+    given(delegate.removeTokensByUserName("admin"))
+        .willReturn(Collections.singletonList(TOKEN_VALUE));
+    given(delegate.readAccessToken(TOKEN_VALUE)).willReturn(token);
+    given(delegate.readAuthentication(TOKEN_VALUE)).willReturn(authentication);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      tokenStore.removeTokensByUserName("admin");
+
+      // a concurrent request reads the token before the removal is committed
+      tokenStore.readAccessToken(TOKEN_VALUE);
+      tokenStore.readAuthentication(TOKEN_VALUE);
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    given(delegate.readAccessToken(TOKEN_VALUE)).willReturn(null);
+    given(delegate.readAuthentication(TOKEN_VALUE)).willReturn(null);
+    assertThat(tokenStore.readAccessToken(TOKEN_VALUE)).isNull();
+    assertThat(tokenStore.readAuthentication(TOKEN_VALUE)).isNull();
+  }
+}
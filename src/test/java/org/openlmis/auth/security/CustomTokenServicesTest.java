@@ -21,20 +21,18 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.collect.ImmutableMap;
 import java.util.Date;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.test.util.ReflectionTestUtils;
 
 public class CustomTokenServicesTest {
   private static final String ACCESS_TOKEN = UUID.randomUUID().toString();
@@ -47,10 +45,10 @@ public class CustomTokenServicesTest {
   private TokenStore tokenStore;
 
   @Mock
-  private DefaultOAuth2AccessToken token;
+  private TokenExpirationExtender tokenExpirationExtender;
 
-  @Captor
-  private ArgumentCaptor<Date> dateCaptor;
+  @Mock
+  private DefaultOAuth2AccessToken token;
 
   private CustomTokenServices tokenServices;
 
@@ -58,14 +56,13 @@ public class CustomTokenServicesTest {
   public void setUp() {
     tokenServices = new CustomTokenServices();
     tokenServices.setTokenStore(tokenStore);
-
-    ReflectionTestUtils.setField(tokenServices, "validityMs", 1000);
+    tokenServices.setTokenExpirationExtender(tokenExpirationExtender);
 
     given(tokenStore.readAccessToken(ACCESS_TOKEN)).willReturn(token);
   }
 
   @Test
-  public void shouldIncreaseExpirationForStandardTokens() {
+  public void shouldExtendExpirationForStandardTokens() {
     // given
     given(token.getExpiration()).willReturn(CURRENT_DATE);
     given(token.isExpired()).willReturn(false);
@@ -74,15 +71,12 @@ public class CustomTokenServicesTest {
     OAuth2AccessToken result = tokenServices.readAccessToken(ACCESS_TOKEN);
 
     // then
-    verify(token).setExpiration(dateCaptor.capture());
+    verify(tokenExpirationExtender).extend(token);
     assertThat(result).isEqualTo(token);
-
-    Date expirationDate = dateCaptor.getValue();
-    assertThat(expirationDate).isAfter(CURRENT_DATE);
   }
 
   @Test
-  public void shouldNotIncreaseExpirationForExpiredTokens() {
+  public void shouldNotExtendExpirationForExpiredTokens() {
     // given
     given(token.getExpiration()).willReturn(CURRENT_DATE);
     given(token.isExpired()).willReturn(true);
@@ -91,12 +85,12 @@ public class CustomTokenServicesTest {
     OAuth2AccessToken result = tokenServices.readAccessToken(ACCESS_TOKEN);
 
     // then
-    verify(token, never()).setExpiration(any(Date.class));
+    verify(tokenExpirationExtender, never()).extend(any(DefaultOAuth2AccessToken.class));
     assertThat(result).isEqualTo(token);
   }
 
   @Test
-  public void shouldNotIncreaseExpirationForNonExpiredTokens() {
+  public void shouldNotExtendExpirationForNonExpiringTokens() {
     // given
     given(token.getExpiration()).willReturn(null);
 
@@ -104,12 +98,27 @@ public class CustomTokenServicesTest {
     OAuth2AccessToken result = tokenServices.readAccessToken(ACCESS_TOKEN);
 
     // then
-    verify(token, never()).setExpiration(any(Date.class));
+    verify(tokenExpirationExtender, never()).extend(any(DefaultOAuth2AccessToken.class));
+    assertThat(result).isEqualTo(token);
+  }
+
+  @Test
+  public void shouldNotExtendExpirationForJwtTokens() {
+    // given
+    given(token.getExpiration()).willReturn(CURRENT_DATE);
+    given(token.isExpired()).willReturn(false);
+    given(token.getAdditionalInformation()).willReturn(ImmutableMap.of("jti", ACCESS_TOKEN));
+
+    // when
+    OAuth2AccessToken result = tokenServices.readAccessToken(ACCESS_TOKEN);
+
+    // then
+    verify(tokenExpirationExtender, never()).extend(any(DefaultOAuth2AccessToken.class));
     assertThat(result).isEqualTo(token);
   }
 
   @Test
-  public void shouldNotIncreaseExpirationIfTokenDoesNotExist() {
+  public void shouldNotExtendExpirationIfTokenDoesNotExist() {
     // given
     given(tokenStore.readAccessToken(ACCESS_TOKEN)).willReturn(null);
 
@@ -117,7 +126,7 @@ public class CustomTokenServicesTest {
     OAuth2AccessToken result = tokenServices.readAccessToken(ACCESS_TOKEN);
 
     // then
-    verify(token, never()).setExpiration(any(Date.class));
+    verify(tokenExpirationExtender, never()).extend(any(DefaultOAuth2AccessToken.class));
     assertThat(result).isNull();
   }
 }
@@ -0,0 +1,108 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ExpiredTokenReaperTest {
+  private static final int SLICE_SIZE = 2;
+
+  private ExtendedTokenStore tokenStore = mock(ExtendedTokenStore.class);
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private ExpiredTokenReaper reaper = new ExpiredTokenReaper();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(reaper, "tokenStore", tokenStore);
+    ReflectionTestUtils.setField(reaper, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(reaper, "sliceSize", SLICE_SIZE);
+    reaper.init();
+
+    given(tokenStore.removeExpiredRefreshTokens(any(), anyInt()))
+        .willReturn(new TokenStoreSlice(null, 0, 0, 0));
+  }
+
+  @Test
+  public void shouldWalkStoreInSlices() {
+    given(tokenStore.removeExpiredAccessTokens(null, SLICE_SIZE))
+        .willReturn(new TokenStoreSlice("b", 2, 1, 100));
+    given(tokenStore.removeExpiredAccessTokens("b", SLICE_SIZE))
+        .willReturn(new TokenStoreSlice(null, 1, 1, 50));
+
+    reaper.reap();
+    assertThat(live("access")).isZero();
+
+    reaper.reap();
+
+    assertThat(live("access")).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.token.reaper.removed")
+        .tag("type", "access").counter().count()).isEqualTo(2);
+    assertThat(meterRegistry.get("auth.token.reaper.removed.bytes")
+        .tag("type", "access").counter().count()).isEqualTo(150);
+  }
+
+  @Test
+  public void shouldStartNewPassAfterReachingEndOfStore() {
+    given(tokenStore.removeExpiredAccessTokens(null, SLICE_SIZE))
+        .willReturn(new TokenStoreSlice(null, 2, 0, 0))
+        .willReturn(new TokenStoreSlice(null, 1, 0, 0));
+
+    reaper.reap();
+    assertThat(live("access")).isEqualTo(2);
+
+    reaper.reap();
+    assertThat(live("access")).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldContinueAfterFailure() {
+    given(tokenStore.removeExpiredAccessTokens(null, SLICE_SIZE))
+        .willThrow(new DataAccessResourceFailureException("test"))
+        .willReturn(new TokenStoreSlice(null, 3, 0, 0));
+
+    reaper.reap();
+    reaper.reap();
+
+    assertThat(live("access")).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldNotReapTokensKeptInHeap() {
+    TokenStore inMemoryStore = mock(TokenStore.class);
+    ReflectionTestUtils.setField(reaper, "tokenStore", inMemoryStore);
+
+    reaper.reap();
+
+    verifyZeroInteractions(inMemoryStore);
+  }
+
+  private double live(String type) {
+    return meterRegistry.get("auth.token.store.live").tag("type", type).gauge().value();
+  }
+}
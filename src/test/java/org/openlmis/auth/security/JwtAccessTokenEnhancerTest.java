@@ -0,0 +1,110 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.auth.OAuth2AuthenticationDataBuilder;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class JwtAccessTokenEnhancerTest {
+  private static final String TOKEN_VALUE = UUID.randomUUID().toString();
+  private static final String KEY_ID = "test-key";
+
+  private JwtSigningKey signingKey = JwtSigningKey.generate(KEY_ID);
+  private JwtAccessTokenEnhancer enhancer = new JwtAccessTokenEnhancer(signingKey);
+
+  private UUID referenceDataUserId = UUID.randomUUID();
+  private DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(TOKEN_VALUE);
+
+  @Before
+  public void setUp() {
+    token.setExpiration(new Date(System.currentTimeMillis() + 60_000));
+    token.setAdditionalInformation(ImmutableMap.of(
+        "referenceDataUserId", referenceDataUserId, "username", "admin"));
+  }
+
+  @Test
+  public void shouldSignUserTokens() {
+    OAuth2AccessToken result = enhancer.enhance(token, userAuthentication());
+
+    Jwt jwt = JwtHelper.decodeAndVerify(result.getValue(), signingKey.getVerifier());
+    Map<String, Object> claims = JsonParserFactory.create().parseMap(jwt.getClaims());
+
+    assertThat(claims)
+        .containsEntry("jti", TOKEN_VALUE)
+        .containsEntry("referenceDataUserId", referenceDataUserId.toString())
+        .containsEntry("username", "admin")
+        .containsEntry("user_name", "admin")
+        .containsEntry("client_id", "user-client")
+        .containsKey("exp");
+    assertThat(JwtHelper.headers(result.getValue()))
+        .containsEntry("kid", KEY_ID)
+        .containsEntry("alg", JwtSigningKey.ALGORITHM);
+  }
+
+  @Test
+  public void shouldKeepOriginalValueInAdditionalInformation() {
+    OAuth2AccessToken result = enhancer.enhance(token, userAuthentication());
+
+    assertThat(result.getAdditionalInformation())
+        .containsEntry("jti", TOKEN_VALUE)
+        .containsEntry("referenceDataUserId", referenceDataUserId);
+    assertThat(result.getExpiration()).isEqualTo(token.getExpiration());
+    assertThat(token.getValue()).isEqualTo(TOKEN_VALUE);
+  }
+
+  @Test(expected = InvalidSignatureException.class)
+  public void shouldNotVerifyTokensWithAnotherKey() {
+    OAuth2AccessToken result = enhancer.enhance(token, userAuthentication());
+
+    JwtHelper.decodeAndVerify(result.getValue(), JwtSigningKey.generate(null).getVerifier());
+  }
+
+  @Test
+  public void shouldNotChangeServiceTokens() {
+    OAuth2Authentication authentication = new OAuth2AuthenticationDataBuilder()
+        .buildServiceAuthentication();
+
+    assertThat(enhancer.enhance(token, authentication)).isSameAs(token);
+  }
+
+  @Test
+  public void shouldNotChangeApiKeyTokens() {
+    OAuth2Authentication authentication = new OAuth2AuthenticationDataBuilder()
+        .buildApiKeyAuthentication();
+
+    assertThat(enhancer.enhance(token, authentication)).isSameAs(token);
+  }
+
+  private OAuth2Authentication userAuthentication() {
+    return new OAuth2AuthenticationDataBuilder()
+        .withReferenceDataUserId(referenceDataUserId)
+        .buildUserAuthentication();
+  }
+}
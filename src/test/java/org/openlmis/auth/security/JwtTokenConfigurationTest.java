@@ -0,0 +1,42 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JwtTokenConfigurationTest {
+  private JwtTokenConfiguration configuration = new JwtTokenConfiguration();
+
+  @Test
+  public void shouldNotStartWithoutConfiguredKey() {
+    ReflectionTestUtils.setField(configuration, "privateKey", "");
+
+    assertThrows(IllegalStateException.class, () -> configuration.jwtSigningKey());
+  }
+
+  @Test
+  public void shouldGenerateKeyOnlyIfAllowed() {
+    ReflectionTestUtils.setField(configuration, "privateKey", "");
+    ReflectionTestUtils.setField(configuration, "keyId", "key-1");
+    ReflectionTestUtils.setField(configuration, "generateKey", true);
+
+    assertThat(configuration.jwtSigningKey().getKeyId()).isEqualTo("key-1");
+  }
+}
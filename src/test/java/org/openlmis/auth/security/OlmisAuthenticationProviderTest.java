@@ -21,8 +21,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,12 +43,16 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.openlmis.auth.UserDataBuilder;
 import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.domain.User;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
 import org.openlmis.auth.repository.UnsuccessfulAuthenticationAttemptRepository;
 import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.TokenRevocationService;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -66,6 +74,12 @@ public class OlmisAuthenticationProviderTest {
   @Mock
   private PasswordEncoder passwordEncoder;
 
+  @Mock
+  private TokenRevocationService tokenRevocationService;
+
+  @Mock
+  private UserDetailsPasswordService userDetailsPasswordService;
+
   @InjectMocks
   private OlmisAuthenticationProvider olmisAuthenticationProvider;
 
@@ -81,7 +95,6 @@ public class OlmisAuthenticationProviderTest {
     attempt = new UnsuccessfulAuthenticationAttempt(user);
 
     when(userRepository.findOneByUsernameIgnoreCase(anyString())).thenReturn(user);
-    when(userRepository.findByIdForUpdate(any(UUID.class))).thenReturn(Optional.of(user));
     when(userDetails.getUsername()).thenReturn(user.getUsername());
     when(unsuccessfulAuthenticationAttemptRepository.findByUserId(any(UUID.class)))
         .thenReturn(Optional.of(attempt));
@@ -119,9 +132,8 @@ public class OlmisAuthenticationProviderTest {
     olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication);
 
     // then
-    assertFalse(user.isLockedOut());
-    verify(userRepository).save(user);
-    verify(unsuccessfulAuthenticationAttemptRepository).save(attempt);
+    verify(userRepository).updateLockedOut(user.getId(), false);
+    verify(unsuccessfulAuthenticationAttemptRepository).resetCounter(user.getId());
   }
 
   @Test
@@ -130,22 +142,40 @@ public class OlmisAuthenticationProviderTest {
     when(authentication.getCredentials()).thenReturn(Objects.instance());
     when(userDetails.getPassword()).thenReturn("test-password");
     when(passwordEncoder.matches(anyString(), anyString())).thenReturn(Boolean.TRUE);
-    attempt.setAttemptCounter(3);
+    attempt.setAttemptCounter(2);
 
     // when
     olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication);
 
     // then
-    assertEquals(0, (int) attempt.getAttemptCounter());
-    verify(unsuccessfulAuthenticationAttemptRepository).save(attempt);
+    verify(unsuccessfulAuthenticationAttemptRepository).resetCounter(user.getId());
+    verify(userRepository, never()).updateLockedOut(any(UUID.class), anyBoolean());
   }
 
   @Test
-  public void shouldResetStaleCounterAndThenIncrementOnFailedLoginAfterWindow() {
+  public void shouldNotWriteAnythingOnSuccessfulLoginWithoutUnsuccessfulAttempts() {
+    // given
+    when(authentication.getCredentials()).thenReturn(Objects.instance());
+    when(userDetails.getPassword()).thenReturn("test-password");
+    when(passwordEncoder.matches(anyString(), anyString())).thenReturn(Boolean.TRUE);
+
+    // when
+    olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication);
+
+    // then
+    verify(unsuccessfulAuthenticationAttemptRepository, never()).resetCounter(any(UUID.class));
+    verify(unsuccessfulAuthenticationAttemptRepository, never())
+        .save(any(UnsuccessfulAuthenticationAttempt.class));
+    verify(userRepository, never()).updateLockedOut(any(UUID.class), anyBoolean());
+  }
+
+  @Test
+  public void shouldCountUnsuccessfulAttemptWithinLockoutWindow() {
     // given
-    attempt.setAttemptCounter(3);
-    attempt.setLastUnsuccessfulAuthenticationAttemptDate(ZonedDateTime.now().minusSeconds(61));
     doThrow(new BadCredentialsException("Bad credentials")).when(authentication).getCredentials();
+    when(unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(any(UUID.class), eq(user.getId()), eq(60L)))
+        .thenReturn(1);
 
     // when
     assertThrows(BadCredentialsException.class, () ->
@@ -153,16 +183,18 @@ public class OlmisAuthenticationProviderTest {
     );
 
     // then
-    assertEquals(1, (int) attempt.getAttemptCounter());
-    assertFalse(user.isLockedOut());
+    verify(userRepository, never()).lockOut(any(UUID.class));
   }
 
   @Test
   public void shouldLockOutUserIfExceedsMaxAttemptNumber() {
     // given
     user.setLockedOut(false);
-    attempt.setAttemptCounter(2);
     doThrow(new BadCredentialsException("Bad credentials")).when(authentication).getCredentials();
+    when(unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(any(UUID.class), eq(user.getId()), eq(60L)))
+        .thenReturn(3);
+    when(userRepository.lockOut(user.getId())).thenReturn(1);
 
     // when
     BadCredentialsException exception =
@@ -172,9 +204,89 @@ public class OlmisAuthenticationProviderTest {
 
     // then
     assertNotNull(exception);
-    assertTrue(user.isLockedOut());
-    verify(userRepository).save(user);
-    verify(unsuccessfulAuthenticationAttemptRepository).save(attempt);
+    verify(userRepository).lockOut(user.getId());
+    verify(tokenRevocationService).revokeUserTokens(user.getUsername());
+  }
+
+  @Test
+  public void shouldNotRevokeTokensIfUserWasAlreadyLockedOut() {
+    // given
+    doThrow(new BadCredentialsException("Bad credentials")).when(authentication).getCredentials();
+    when(unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(any(UUID.class), eq(user.getId()), eq(60L)))
+        .thenReturn(4);
+    when(userRepository.lockOut(user.getId())).thenReturn(0);
+
+    // when
+    assertThrows(BadCredentialsException.class, () ->
+        olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication)
+    );
+
+    // then
+    verify(tokenRevocationService, never()).revokeUserTokens(anyString());
+  }
+
+  @Test
+  public void shouldNotRevokeTokensOnFailedLoginIfLockoutIsDisabled() {
+    // given
+    ReflectionTestUtils.setField(olmisAuthenticationProvider, "maxUnsuccessfulAuthAttempts", 0);
+    ReflectionTestUtils.setField(olmisAuthenticationProvider, "lockoutTime", 0);
+    doThrow(new BadCredentialsException("Bad credentials")).when(authentication).getCredentials();
+    when(unsuccessfulAuthenticationAttemptRepository
+        .registerUnsuccessfulAttempt(any(UUID.class), eq(user.getId()), eq(0L)))
+        .thenReturn(1);
+    when(userRepository.lockOut(user.getId())).thenReturn(1);
+
+    // when
+    assertThrows(BadCredentialsException.class, () ->
+        olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication)
+    );
+
+    // then
+    verify(tokenRevocationService, never()).revokeUserTokens(anyString());
+  }
+
+  @Test
+  public void shouldNotCountAttemptIfPasswordCouldNotBeChecked() {
+    // given
+    attempt.setAttemptCounter(2);
+    when(authentication.getCredentials()).thenReturn(Objects.instance());
+    when(userDetails.getPassword()).thenReturn("test-password");
+    when(passwordEncoder.matches(anyString(), anyString()))
+        .thenThrow(new ServiceUnavailableMessageException("busy"));
+
+    // when
+    assertThrows(ServiceUnavailableMessageException.class, () ->
+        olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication)
+    );
+
+    // then
+    assertFalse(user.isLockedOut());
+    verify(unsuccessfulAuthenticationAttemptRepository, never())
+        .registerUnsuccessfulAttempt(any(UUID.class), any(UUID.class), anyLong());
+    verify(unsuccessfulAuthenticationAttemptRepository, never()).resetCounter(any(UUID.class));
+  }
+
+  @Test
+  public void shouldLogInWithoutRehashingPasswordIfServerIsBusy() {
+    // given
+    user.setPassword("hash");
+    when(authentication.getCredentials()).thenReturn("password");
+    when(userDetails.getPassword()).thenReturn("hash");
+    when(passwordEncoder.matches("password", "hash")).thenReturn(Boolean.TRUE);
+    when(passwordEncoder.upgradeEncoding("hash")).thenReturn(true);
+    when(passwordEncoder.encode("password"))
+        .thenThrow(new ServiceUnavailableMessageException("busy"));
+
+    // when
+    olmisAuthenticationProvider.additionalAuthenticationChecks(userDetails, authentication);
+    Authentication result = olmisAuthenticationProvider
+        .createSuccessAuthentication(user, authentication, user);
+
+    // then
+    assertEquals(user, result.getPrincipal());
+    assertTrue(result.isAuthenticated());
+    verify(userDetailsPasswordService, never()).updatePassword(any(), anyString());
   }
 
 }
@@ -0,0 +1,57 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.junit.Test;
+import org.openlmis.auth.domain.User;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+public class PersistentTokenStoreTest {
+
+  private PersistentTokenStore tokenStore = new PersistentTokenStore(mock(DataSource.class));
+
+  @Test
+  public void shouldNotStorePasswordOfUser() {
+    User user = new User();
+    user.setId(UUID.randomUUID());
+    user.setUsername("admin");
+    user.setPassword("hash");
+    user.setEnabled(true);
+
+    OAuth2Authentication authentication = new OAuth2Authentication(
+        new OAuth2Request(null, "user-client", null, true, null, null, null, null, null),
+        new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+    OAuth2Authentication stored = SerializationUtils
+        .deserialize(tokenStore.serializeAuthentication(authentication));
+
+    User storedUser = (User) stored.getPrincipal();
+    assertThat(storedUser.getPassword()).isNull();
+    assertThat(storedUser.getId()).isEqualTo(user.getId());
+    assertThat(storedUser.getUsername()).isEqualTo(user.getUsername());
+    assertThat(stored.getName()).isEqualTo(authentication.getName());
+    assertThat(user.getPassword()).isEqualTo("hash");
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TokenExpirationExtenderTest {
+  private static final long VALIDITY_MS = 100_000;
+  private static final String EXTENSIONS = "auth.token.expiration.extensions";
+
+  private ExtendedTokenStore tokenStore = mock(ExtendedTokenStore.class);
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private TokenExpirationExtender extender = new TokenExpirationExtender();
+
+  @Before
+  public void setUp() {
+    setTokenStore(tokenStore);
+    ReflectionTestUtils.setField(extender, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(extender, "validityMs", VALIDITY_MS);
+    ReflectionTestUtils.setField(extender, "extensionFraction", 0.1);
+    ReflectionTestUtils.setField(extender, "flushBatchSize", 2);
+    extender.init();
+  }
+
+  @Test
+  public void shouldNotExtendRecentlyExtendedToken() {
+    DefaultOAuth2AccessToken token = tokenExpiringIn(VALIDITY_MS - 1_000);
+    Date expiration = token.getExpiration();
+
+    extender.extend(token);
+    extender.flush();
+
+    assertThat(token.getExpiration()).isEqualTo(expiration);
+    verify(tokenStore, never()).updateAccessTokens(anyCollection());
+    assertThat(count("suppressed")).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldExtendTokenAfterGivenFractionOfValidityTime() {
+    DefaultOAuth2AccessToken token = tokenExpiringIn(VALIDITY_MS / 2);
+    long before = System.currentTimeMillis();
+
+    extender.extend(token);
+
+    assertThat(token.getExpiration().getTime()).isGreaterThanOrEqualTo(before + VALIDITY_MS);
+    verify(tokenStore, never()).updateAccessTokens(anyCollection());
+  }
+
+  @Test
+  public void shouldWriteExtendedTokensInBatches() {
+    for (int i = 0; i < 5; ++i) {
+      extender.extend(tokenExpiringIn(VALIDITY_MS / 2));
+    }
+
+    extender.flush();
+
+    ArgumentCaptor<Collection<OAuth2AccessToken>> captor = newCaptor();
+    verify(tokenStore, times(3)).updateAccessTokens(captor.capture());
+    assertThat(captor.getAllValues()).extracting(Collection::size).containsExactly(2, 2, 1);
+    assertThat(count("written")).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldWriteTokenExtendedManyTimesOnce() {
+    DefaultOAuth2AccessToken token = tokenExpiringIn(VALIDITY_MS / 2);
+
+    extender.extend(token);
+    token.setExpiration(new Date(System.currentTimeMillis() + VALIDITY_MS / 2));
+    extender.extend(token);
+    extender.flush();
+    extender.flush();
+
+    verify(tokenStore).updateAccessTokens(Collections.singletonList(token));
+    assertThat(count("coalesced")).isEqualTo(1);
+    assertThat(count("written")).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldCountFailedWrites() {
+    willThrow(new DataAccessResourceFailureException("test"))
+        .given(tokenStore).updateAccessTokens(anyCollection());
+    extender.extend(tokenExpiringIn(VALIDITY_MS / 2));
+
+    extender.flush();
+    extender.flush();
+
+    verify(tokenStore).updateAccessTokens(anyCollection());
+    assertThat(count("failed")).isEqualTo(1);
+    assertThat(count("written")).isZero();
+  }
+
+  @Test
+  public void shouldNotQueueTokensIfStoreKeepsThemInHeap() {
+    setTokenStore(mock(TokenStore.class));
+    DefaultOAuth2AccessToken token = tokenExpiringIn(VALIDITY_MS / 2);
+
+    extender.extend(token);
+    extender.flush();
+
+    assertThat(token.getExpiration()).isInTheFuture();
+    assertThat(count("written")).isZero();
+  }
+
+  private void setTokenStore(TokenStore store) {
+    ReflectionTestUtils.setField(extender, "tokenStore", store);
+  }
+
+  private DefaultOAuth2AccessToken tokenExpiringIn(long millis) {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setExpiration(new Date(System.currentTimeMillis() + millis));
+    return token;
+  }
+
+  private double count(String result) {
+    return meterRegistry.get(EXTENSIONS).tag("result", result).counter().count();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArgumentCaptor<Collection<OAuth2AccessToken>> newCaptor() {
+    return ArgumentCaptor.forClass(Collection.class);
+  }
+}
@@ -19,10 +19,16 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Date;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
@@ -40,6 +46,8 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AccessTokenServiceTest {
@@ -51,21 +59,33 @@ public class AccessTokenServiceTest {
   @Mock(name = "defaultTokenServices")
   private DefaultTokenServices defaultTokenServices;
 
+  @Mock
+  private TokenStore tokenStore;
+
   @InjectMocks
   private AccessTokenService accessTokenService;
 
   private Client client = new ClientDataBuilder().buildServiceClient();
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
   @Before
   public void setUp() {
+    ReflectionTestUtils.setField(accessTokenService, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(accessTokenService, "refreshAheadSeconds", 300L);
     accessTokenService.init();
+    ReflectionTestUtils.setField(accessTokenService, "refreshExecutor",
+        MoreExecutors.newDirectExecutorService());
+
+    when(clientDetailsService.loadClientByClientId(client.getClientId()))
+        .thenReturn(new ClientDetails(client));
+    when(tokenStore.readAccessToken(anyString()))
+        .thenAnswer(invocation -> new DefaultOAuth2AccessToken(
+            invocation.getArgument(0, String.class)));
   }
 
   @Test
   public void shouldObtainToken() {
     // when
-    when(clientDetailsService.loadClientByClientId(client.getClientId()))
-        .thenReturn(new ClientDetails(client));
     when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
         .thenAnswer(new CreateAccessTokenAnswer());
 
@@ -77,6 +97,90 @@ public class AccessTokenServiceTest {
     verify(clientDetailsService, atLeastOnce()).loadClientByClientId(client.getClientId());
   }
 
+  @Test
+  public void shouldReuseServiceToken() {
+    when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
+        .thenReturn(createToken(TOKEN, 1800));
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+
+    verify(defaultTokenServices, times(1)).createAccessToken(any(OAuth2Authentication.class));
+    assertThat(count("auth.service.token.requests", "hit"), is(1.0));
+    assertThat(count("auth.service.token.requests", "miss"), is(1.0));
+  }
+
+  @Test
+  public void shouldObtainNewServiceTokenIfCachedOneHasExpired() {
+    UUID newToken = UUID.randomUUID();
+    when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
+        .thenReturn(createToken(TOKEN, -1))
+        .thenReturn(createToken(newToken, 1800));
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(newToken));
+
+    verify(defaultTokenServices, times(2)).createAccessToken(any(OAuth2Authentication.class));
+    assertThat(count("auth.service.token.requests", "miss"), is(2.0));
+  }
+
+  @Test
+  public void shouldObtainNewServiceTokenIfCachedOneIsNotInStore() {
+    UUID newToken = UUID.randomUUID();
+    when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
+        .thenReturn(createToken(TOKEN, 1800))
+        .thenReturn(createToken(newToken, 1800));
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+
+    // the token has been revoked
+    when(tokenStore.readAccessToken(TOKEN.toString())).thenReturn(null);
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(newToken));
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(newToken));
+
+    verify(defaultTokenServices, times(2)).createAccessToken(any(OAuth2Authentication.class));
+  }
+
+  @Test
+  public void shouldRefreshServiceTokenThatIsAboutToExpire() {
+    when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
+        .thenReturn(createToken(TOKEN, 60));
+    when(defaultTokenServices.readAccessToken(TOKEN.toString()))
+        .thenReturn(createToken(TOKEN, 1800));
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+
+    verify(defaultTokenServices, times(1)).createAccessToken(any(OAuth2Authentication.class));
+    verify(defaultTokenServices, times(1)).readAccessToken(TOKEN.toString());
+    assertThat(meterRegistry.get("auth.service.token.refreshes").counter().count(), is(1.0));
+  }
+
+  @Test
+  public void shouldObtainNewServiceTokenIfRefreshedTokenDoesNotExist() {
+    UUID newToken = UUID.randomUUID();
+    when(defaultTokenServices.createAccessToken(any(OAuth2Authentication.class)))
+        .thenReturn(createToken(TOKEN, 60))
+        .thenReturn(createToken(newToken, 1800));
+
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(TOKEN));
+    assertThat(accessTokenService.obtainServiceToken(client.getClientId()), is(newToken));
+
+    verify(defaultTokenServices).readAccessToken(TOKEN.toString());
+  }
+
+  private OAuth2AccessToken createToken(UUID value, int expiresInSeconds) {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value.toString());
+    token.setExpiration(new Date(System.currentTimeMillis() + expiresInSeconds * 1000L));
+
+    return token;
+  }
+
+  private double count(String name, String result) {
+    return meterRegistry.get(name).tag("result", result).counter().count();
+  }
+
   private final class CreateAccessTokenAnswer implements Answer<OAuth2AccessToken> {
 
     @Override
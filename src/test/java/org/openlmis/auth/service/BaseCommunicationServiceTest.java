@@ -58,12 +58,12 @@ public abstract class BaseCommunicationServiceTest {
 
   @Before
   public void setUp() {
-    when(accessTokenService.obtainToken("trusted-client")).thenReturn(TOKEN);
+    when(accessTokenService.obtainServiceToken("trusted-client")).thenReturn(TOKEN);
   }
 
   @After
   public void tearDown() {
-    verify(accessTokenService).obtainToken("trusted-client");
+    verify(accessTokenService).obtainServiceToken("trusted-client");
   }
 
   protected abstract BaseCommunicationService getService();
@@ -0,0 +1,93 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.auth.ClientDataBuilder;
+import org.openlmis.auth.domain.Client;
+import org.openlmis.auth.repository.ClientRepository;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClientDetailsServiceImplTest {
+
+  @Mock
+  private ClientRepository clientRepository;
+
+  @InjectMocks
+  private ClientDetailsServiceImpl clientDetailsService;
+
+  private Client client = new ClientDataBuilder().buildUserClient();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(clientDetailsService, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(clientDetailsService, "cacheMaxSize", 10L);
+    ReflectionTestUtils.setField(clientDetailsService, "cacheTtlSeconds", 60L);
+    clientDetailsService.init();
+  }
+
+  @Test
+  public void shouldLoadClientFromDatabaseOnlyOnce() {
+    mockClient();
+
+    ClientDetails first = clientDetailsService.loadClientByClientId(client.getClientId());
+    ClientDetails second = clientDetailsService.loadClientByClientId(client.getClientId());
+
+    assertThat(first.getClientId()).isEqualTo(client.getClientId());
+    assertThat(first.getScope()).containsExactlyInAnyOrder("read", "write");
+    assertThat(second).isSameAs(first);
+    verify(clientRepository).findOneByClientId(client.getClientId());
+  }
+
+  @Test
+  public void shouldLoadClientAgainAfterEviction() {
+    mockClient();
+
+    clientDetailsService.loadClientByClientId(client.getClientId());
+    clientDetailsService.evict(client.getClientId());
+    clientDetailsService.loadClientByClientId(client.getClientId());
+
+    verify(clientRepository, times(2)).findOneByClientId(client.getClientId());
+  }
+
+  @Test(expected = NoSuchClientException.class)
+  public void shouldThrowExceptionIfClientDoesNotExist() {
+    given(clientRepository.findOneByClientId("missing")).willReturn(Optional.empty());
+
+    clientDetailsService.loadClientByClientId("missing");
+  }
+
+  private void mockClient() {
+    given(clientRepository.findOneByClientId(client.getClientId()))
+        .willReturn(Optional.of(client));
+  }
+
+}
@@ -15,49 +15,29 @@
 
 package org.openlmis.auth.service;
 
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.Locale;
-import java.util.UUID;
-import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.openlmis.auth.DummyUserMainDetailsDto;
 import org.openlmis.auth.domain.ExpirationToken;
 import org.openlmis.auth.domain.User;
-import org.openlmis.auth.i18n.ExposedMessageSource;
 import org.openlmis.auth.repository.ExpirationTokenRepository;
-import org.openlmis.auth.service.notification.NotificationService;
-import org.openlmis.auth.service.referencedata.UserReferenceDataService;
+import org.openlmis.auth.service.notification.NotificationOutbox;
 
 @RunWith(MockitoJUnitRunner.class)
 public abstract class ExpirationTokenNotifierTest<T extends ExpirationToken> {
 
   @Mock
-  private UserReferenceDataService userReferenceDataService;
-
-  @Mock
-  private NotificationService notificationService;
-
-  @Mock
-  private ExposedMessageSource messageSource;
+  private NotificationOutbox notificationOutbox;
 
   @Mock
   User user;
 
-  @Before
-  public void setUp() {
-    when(userReferenceDataService.findOne(any(UUID.class)))
-        .thenReturn(new DummyUserMainDetailsDto());
-    when(messageSource.getMessage(anyString(), any(String[].class), any(Locale.class)))
-        .thenAnswer(invocation -> invocation.getArgument(0, String.class));
-  }
-
   abstract ExpirationTokenNotifier<T> getNotifier();
 
   abstract ExpirationTokenRepository<T> getRepository();
@@ -81,7 +61,8 @@ public abstract class ExpirationTokenNotifierTest<T extends ExpirationToken> {
     verify(repository).flush();
   }
 
-  void verifyNotificationRequest(User user, String subject, String content) {
-    verify(notificationService).notify(user, subject, content);
+  void verifyNotificationRequest(User user, String subjectKey, String bodyKey) {
+    verify(notificationOutbox)
+        .enqueue(eq(user), anyString(), eq(subjectKey), eq(bodyKey), anyString());
   }
 }
@@ -0,0 +1,88 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+public class HttpClientConfigurationTest {
+
+  private HttpClientConfiguration configuration = new HttpClientConfiguration();
+
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(configuration, "maxConnections", 50);
+    ReflectionTestUtils.setField(configuration, "maxConnectionsPerRoute", 10);
+    ReflectionTestUtils.setField(configuration, "connectTimeoutMs", 1000);
+    ReflectionTestUtils.setField(configuration, "readTimeoutMs", 2000);
+    ReflectionTestUtils.setField(configuration, "connectionRequestTimeoutMs", 3000);
+    ReflectionTestUtils.setField(configuration, "idleTimeoutSeconds", 30L);
+
+    connectionManager = configuration.httpClientConnectionManager();
+    httpClient = configuration.httpClient(connectionManager);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    httpClient.close();
+  }
+
+  @Test
+  public void shouldLimitConnectionsInPool() {
+    assertThat(connectionManager.getMaxTotal()).isEqualTo(50);
+    assertThat(connectionManager.getDefaultMaxPerRoute()).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldSetTimeoutsOfRequests() {
+    RequestConfig config = ((Configurable) httpClient).getConfig();
+
+    assertThat(config.getConnectTimeout()).isEqualTo(1000);
+    assertThat(config.getSocketTimeout()).isEqualTo(2000);
+    assertThat(config.getConnectionRequestTimeout()).isEqualTo(3000);
+  }
+
+  @Test
+  public void shouldTakeConnectionsFromPool() {
+    assertThat(ReflectionTestUtils.getField(httpClient, "connManager"))
+        .isSameAs(connectionManager);
+  }
+
+  @Test
+  public void shouldSendRequestsWithPooledClient() {
+    RestTemplate restTemplate = configuration.restTemplate(httpClient);
+
+    assertThat(restTemplate.getRequestFactory())
+        .isInstanceOf(HttpComponentsClientHttpRequestFactory.class);
+    assertThat(((HttpComponentsClientHttpRequestFactory) restTemplate.getRequestFactory())
+        .getHttpClient()).isSameAs(httpClient);
+  }
+
+}
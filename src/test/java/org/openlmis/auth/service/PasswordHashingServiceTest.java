@@ -0,0 +1,146 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class PasswordHashingServiceTest {
+
+  private static final String PASSWORD = "password";
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private PasswordHashingService passwordHashingService = new PasswordHashingService();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(passwordHashingService, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(passwordHashingService, "poolSize", 1);
+    ReflectionTestUtils.setField(passwordHashingService, "queueCapacity", 1);
+    ReflectionTestUtils.setField(passwordHashingService, "strength", 4);
+    passwordHashingService.init();
+  }
+
+  @After
+  public void tearDown() {
+    passwordHashingService.destroy();
+  }
+
+  @Test
+  public void shouldHashAndVerifyPassword() {
+    String hash = passwordHashingService.getPasswordEncoder().encode(PASSWORD);
+
+    assertThat(hash).isNotEqualTo(PASSWORD);
+    assertThat(passwordHashingService.matches(PASSWORD, hash)).isTrue();
+    assertThat(passwordHashingService.matches("other", hash)).isFalse();
+    assertThat(meterRegistry.get(PasswordHashingService.TIMER_NAME)
+        .tag("operation", "hash").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get(PasswordHashingService.TIMER_NAME)
+        .tag("operation", "verify").timer().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldPrefixNewHashesWithSchemeId() {
+    String hash = passwordHashingService.encode(PASSWORD);
+
+    assertThat(hash).startsWith("{bcrypt}$2a$04$");
+    assertThat(passwordHashingService.getPasswordEncoder().upgradeEncoding(hash)).isFalse();
+  }
+
+  @Test
+  public void shouldMatchAndUpgradeHashesWithoutSchemeId() {
+    String hash = new BCryptPasswordEncoder(4).encode(PASSWORD);
+
+    assertThat(passwordHashingService.matches(PASSWORD, hash)).isTrue();
+    assertThat(passwordHashingService.getPasswordEncoder().upgradeEncoding(hash)).isTrue();
+  }
+
+  @Test
+  public void shouldUpgradeHashesOfOtherStrength() {
+    String stronger = "{bcrypt}" + new BCryptPasswordEncoder(5).encode(PASSWORD);
+
+    assertThat(passwordHashingService.matches(PASSWORD, stronger)).isTrue();
+    assertThat(passwordHashingService.getPasswordEncoder().upgradeEncoding(stronger)).isTrue();
+  }
+
+  @Test
+  public void shouldCalibrateStrengthToTargetTime() {
+    ReflectionTestUtils.setField(passwordHashingService, "targetMillis", 1L);
+    assertThat(passwordHashingService.calibrate())
+        .isEqualTo(PasswordHashingService.MIN_CALIBRATED_STRENGTH);
+
+    ReflectionTestUtils.setField(passwordHashingService, "targetMillis", Long.MAX_VALUE);
+    assertThat(passwordHashingService.calibrate())
+        .isEqualTo(PasswordHashingService.MAX_CALIBRATED_STRENGTH);
+  }
+
+  @Test
+  public void shouldRejectPasswordsIfAllThreadsAreBusyAndQueueIsFull() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PasswordEncoder delegate = mock(PasswordEncoder.class);
+    given(delegate.encode(any())).willAnswer(invocation -> {
+      started.countDown();
+      release.await(10, TimeUnit.SECONDS);
+      return "hash";
+    });
+    ReflectionTestUtils.setField(passwordHashingService, "delegate", delegate);
+
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+
+    try {
+      callers.submit(() -> passwordHashingService.encode(PASSWORD));
+      started.await(10, TimeUnit.SECONDS);
+      callers.submit(() -> passwordHashingService.encode(PASSWORD));
+      waitForQueuedPassword();
+
+      assertThrows(ServiceUnavailableMessageException.class,
+          () -> passwordHashingService.encode(PASSWORD));
+      assertThat(meterRegistry.get("auth.password.hashing.rejections").counter().count())
+          .isEqualTo(1);
+    } finally {
+      release.countDown();
+      callers.shutdownNow();
+    }
+  }
+
+  private void waitForQueuedPassword() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+
+    while (meterRegistry.get("auth.password.hashing.queue").gauge().value() < 1
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+}
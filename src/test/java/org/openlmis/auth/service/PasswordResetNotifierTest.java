@@ -45,11 +45,8 @@ public class PasswordResetNotifierTest extends ExpirationTokenNotifierTest<Passw
   @Captor
   private ArgumentCaptor<PasswordResetToken> tokenCaptor;
 
-  @Override
   @Before
   public void setUp() {
-    super.setUp();
-
     when(user.getId()).thenReturn(UUID.randomUUID());
     when(passwordResetTokenRepository.findOneByUser(user)).thenReturn(null);
     when(passwordResetTokenRepository.save(any(PasswordResetToken.class)))
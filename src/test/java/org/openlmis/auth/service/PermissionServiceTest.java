@@ -19,6 +19,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -28,6 +29,10 @@ import static org.openlmis.auth.i18n.MessageKeys.ERROR_NO_FOLLOWING_PERMISSION;
 import static org.openlmis.auth.service.PermissionService.SERVICE_ACCOUNTS_MANAGE;
 import static org.openlmis.auth.service.PermissionService.USERS_MANAGE;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Rule;
@@ -41,10 +46,14 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.auth.DummyRightDto;
 import org.openlmis.auth.DummyUserMainDetailsDto;
 import org.openlmis.auth.OAuth2AuthenticationDataBuilder;
+import org.openlmis.auth.dto.PermissionCheckDto;
+import org.openlmis.auth.dto.PermissionCheckResultDto;
 import org.openlmis.auth.dto.ResultDto;
 import org.openlmis.auth.dto.RightDto;
 import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
+import org.openlmis.auth.exception.AuthenticationMessageException;
 import org.openlmis.auth.exception.PermissionMessageException;
+import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.service.referencedata.UserReferenceDataService;
 import org.openlmis.auth.util.AuthenticationHelper;
 import org.openlmis.auth.util.Message;
@@ -92,7 +101,6 @@ public class PermissionServiceTest {
         .buildUserAuthentication();
     apiKeyClient = new OAuth2AuthenticationDataBuilder().buildApiKeyAuthentication();
 
-    when(authenticationHelper.getCurrentUser()).thenReturn(user);
     when(authenticationHelper.getRight(USERS_MANAGE)).thenReturn(right);
     when(authenticationHelper.getRight(SERVICE_ACCOUNTS_MANAGE)).thenReturn(right);
     when(userReferenceDataService.hasRight(user.getId(), right.getId()))
@@ -100,6 +108,12 @@ public class PermissionServiceTest {
 
     ReflectionTestUtils.setField(permissionService, "serviceTokenClientId", SERVICE_CLIENT_ID);
     ReflectionTestUtils.setField(apiKeySettings, "prefix", API_KEY_PREFIX);
+    ReflectionTestUtils.setField(permissionService, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(permissionService, "maxBatchSize", 100);
+    ReflectionTestUtils.setField(permissionService, "decisionCacheMaxSize", 100L);
+    ReflectionTestUtils.setField(permissionService, "decisionCacheTtlSeconds", 60L);
+    ReflectionTestUtils.setField(permissionService, "rightCacheTtlSeconds", 3600L);
+    permissionService.init();
   }
 
   @Test
@@ -161,9 +175,11 @@ public class PermissionServiceTest {
 
   @Test
   public void userShouldBeAbleToEditOwnPassword() {
-    permissionService.canEditUserPassword(user.getUsername());
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+
+    permissionService.canEditUserPassword(userClient.getName());
 
-    verify(authenticationHelper).getCurrentUser();
+    verify(authenticationHelper, never()).getCurrentUser();
     verify(authenticationHelper, never()).getRight(anyString());
     verifyZeroInteractions(userReferenceDataService, apiKeySettings);
   }
@@ -207,4 +223,132 @@ public class PermissionServiceTest {
     assertThat(permissionService.hasRight(USERS_MANAGE)).isFalse();
   }
 
+  @Test
+  public void shouldReuseDecisionForTheSameUserAndRight() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+
+    assertThat(permissionService.hasRight(USERS_MANAGE)).isTrue();
+    assertThat(permissionService.hasRight(USERS_MANAGE)).isTrue();
+
+    verify(authenticationHelper, times(1)).getRight(USERS_MANAGE);
+    verify(userReferenceDataService, times(1)).hasRight(user.getId(), right.getId());
+  }
+
+  @Test
+  public void shouldReuseRightIdForDifferentUsers() {
+    UUID otherUserId = UUID.randomUUID();
+    OAuth2Authentication otherUserClient = new OAuth2AuthenticationDataBuilder()
+        .withReferenceDataUserId(otherUserId)
+        .buildUserAuthentication();
+    when(securityContext.getAuthentication()).thenReturn(userClient, otherUserClient);
+
+    permissionService.hasRight(USERS_MANAGE);
+    permissionService.hasRight(USERS_MANAGE);
+
+    verify(authenticationHelper, times(1)).getRight(USERS_MANAGE);
+    verify(userReferenceDataService).hasRight(user.getId(), right.getId());
+    verify(userReferenceDataService).hasRight(otherUserId, right.getId());
+  }
+
+  @Test
+  public void shouldCheckRightOfUserFromTokenWithoutAskingForCurrentUser() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+
+    permissionService.hasRight(USERS_MANAGE);
+
+    verify(authenticationHelper, never()).getCurrentUser();
+    verify(userReferenceDataService).hasRight(user.getId(), right.getId());
+  }
+
+  @Test
+  public void shouldCheckRightAgainAfterDecisionsOfUserWereEvicted() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+    when(userReferenceDataService.hasRight(user.getId(), right.getId()))
+        .thenReturn(new ResultDto<>(true), new ResultDto<>(false));
+
+    assertThat(permissionService.hasRight(USERS_MANAGE)).isTrue();
+    permissionService.evictDecisions(Collections.singleton(user.getId()));
+    assertThat(permissionService.hasRight(USERS_MANAGE)).isFalse();
+  }
+
+  @Test
+  public void shouldCheckEachRightOnlyOnceForManyTargetUsers() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+    when(userReferenceDataService.hasRight(user.getId(), right.getId()))
+        .thenReturn(new ResultDto<>(false));
+    PermissionCheckDto own = new PermissionCheckDto(USERS_MANAGE, user.getId());
+    PermissionCheckDto first = new PermissionCheckDto(USERS_MANAGE, UUID.randomUUID());
+    PermissionCheckDto second = new PermissionCheckDto(USERS_MANAGE, UUID.randomUUID());
+
+    List<PermissionCheckResultDto> result = permissionService
+        .hasRights(Arrays.asList(own, first, second));
+
+    assertThat(result).extracting(PermissionCheckResultDto::isAllowed)
+        .containsExactly(true, false, false);
+    assertThat(result).extracting(PermissionCheckResultDto::getUserId)
+        .containsExactly(own.getUserId(), first.getUserId(), second.getUserId());
+    verify(authenticationHelper, times(1)).getRight(USERS_MANAGE);
+    verify(userReferenceDataService, times(1)).hasRight(user.getId(), right.getId());
+  }
+
+  @Test
+  public void shouldCheckManyRightsOfService() {
+    when(securityContext.getAuthentication()).thenReturn(trustedClient);
+    PermissionCheckDto manageUsers = new PermissionCheckDto(USERS_MANAGE, null);
+    PermissionCheckDto manageApiKeys = new PermissionCheckDto(SERVICE_ACCOUNTS_MANAGE, null);
+
+    List<PermissionCheckResultDto> result = permissionService
+        .hasRights(Arrays.asList(manageUsers, manageApiKeys));
+
+    assertThat(result).extracting(PermissionCheckResultDto::getRightName)
+        .containsExactly(USERS_MANAGE, SERVICE_ACCOUNTS_MANAGE);
+    assertThat(result).extracting(PermissionCheckResultDto::isAllowed)
+        .containsExactly(true, true);
+    verifyZeroInteractions(userReferenceDataService);
+  }
+
+  @Test
+  public void shouldDenyAllRightsOfApiKey() {
+    when(securityContext.getAuthentication()).thenReturn(apiKeyClient);
+    PermissionCheckDto manageUsers = new PermissionCheckDto(USERS_MANAGE, UUID.randomUUID());
+
+    List<PermissionCheckResultDto> result = permissionService
+        .hasRights(Collections.singletonList(manageUsers));
+
+    assertThat(result).extracting(PermissionCheckResultDto::isAllowed).containsExactly(false);
+  }
+
+  @Test
+  public void shouldReturnResultForEachDuplicateCheck() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+    PermissionCheckDto manageUsers = new PermissionCheckDto(USERS_MANAGE, null);
+
+    List<PermissionCheckResultDto> result = permissionService
+        .hasRights(Arrays.asList(manageUsers, manageUsers));
+
+    assertThat(result).extracting(PermissionCheckResultDto::isAllowed)
+        .containsExactly(true, true);
+  }
+
+  @Test
+  public void shouldNotAllowUnknownRightWithoutFailingOtherChecks() {
+    when(securityContext.getAuthentication()).thenReturn(userClient);
+    when(authenticationHelper.getRight("UNKNOWN"))
+        .thenThrow(new AuthenticationMessageException(new Message("test")));
+
+    List<PermissionCheckResultDto> result = permissionService.hasRights(Arrays.asList(
+        new PermissionCheckDto("UNKNOWN", null), new PermissionCheckDto(USERS_MANAGE, null)));
+
+    assertThat(result).extracting(PermissionCheckResultDto::isAllowed)
+        .containsExactly(false, true);
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldRejectTooManyChecks() {
+    ReflectionTestUtils.setField(permissionService, "maxBatchSize", 1);
+
+    permissionService.hasRights(Arrays.asList(
+        new PermissionCheckDto(USERS_MANAGE, null), new PermissionCheckDto(USERS_MANAGE, null)));
+  }
+
 }
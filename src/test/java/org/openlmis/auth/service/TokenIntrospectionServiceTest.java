@@ -0,0 +1,118 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.auth.service.TokenIntrospectionService.ACTIVE;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.auth.exception.ValidationMessageException;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TokenIntrospectionServiceTest {
+  private static final String TOKEN = "token";
+
+  @Mock
+  private DefaultTokenServices tokenServices;
+
+  @InjectMocks
+  private TokenIntrospectionService tokenIntrospectionService;
+
+  private DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(TOKEN);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(tokenIntrospectionService, "maxBatchSize", 2);
+    accessToken.setExpiration(new Date(System.currentTimeMillis() + 60_000));
+  }
+
+  @Test
+  public void shouldReturnClaimsOfActiveToken() {
+    OAuth2Request request = new OAuth2Request(ImmutableMap.of(), "client", null, true,
+        null, null, null, null, null);
+    OAuth2Authentication authentication = new OAuth2Authentication(request, null);
+
+    when(tokenServices.readAccessToken(TOKEN)).thenReturn(accessToken);
+    when(tokenServices.loadAuthentication(TOKEN)).thenReturn(authentication);
+
+    List<Map<String, Object>> result = tokenIntrospectionService
+        .introspect(ImmutableList.of(TOKEN));
+
+    assertThat(result, hasSize(1));
+    assertThat(result.get(0), hasEntry(ACTIVE, true));
+    assertThat(result.get(0), hasEntry("client_id", "client"));
+  }
+
+  @Test
+  public void shouldReturnInactiveForUnknownToken() {
+    List<Map<String, Object>> result = tokenIntrospectionService
+        .introspect(ImmutableList.of(TOKEN, ""));
+
+    assertEquals(ImmutableList.of(ImmutableMap.of(ACTIVE, false),
+        ImmutableMap.of(ACTIVE, false)), result);
+  }
+
+  @Test
+  public void shouldReturnInactiveForExpiredToken() {
+    accessToken.setExpiration(new Date(System.currentTimeMillis() - 1000));
+    when(tokenServices.readAccessToken(TOKEN)).thenReturn(accessToken);
+
+    List<Map<String, Object>> result = tokenIntrospectionService
+        .introspect(ImmutableList.of(TOKEN));
+
+    assertThat(result.get(0), hasEntry(ACTIVE, false));
+    verify(tokenServices, never()).loadAuthentication(anyString());
+  }
+
+  @Test
+  public void shouldReturnInactiveIfAuthenticationCanNotBeLoaded() {
+    when(tokenServices.readAccessToken(TOKEN)).thenReturn(accessToken);
+    when(tokenServices.loadAuthentication(TOKEN)).thenThrow(new InvalidTokenException(TOKEN));
+
+    List<Map<String, Object>> result = tokenIntrospectionService
+        .introspect(ImmutableList.of(TOKEN));
+
+    assertThat(result.get(0), hasEntry(ACTIVE, false));
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldRejectTooManyTokens() {
+    tokenIntrospectionService.introspect(ImmutableList.of("a", "b", "c"));
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.openlmis.auth.domain.TokenRevocation;
+import org.openlmis.auth.dto.TokenRevocationFeedDto;
+import org.openlmis.auth.repository.TokenRevocationRepository;
+import org.openlmis.auth.security.ExtendedTokenStore;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TokenRevocationServiceTest {
+  private static final String TOKEN = "token";
+  private static final String USERNAME = "admin";
+
+  private ExtendedTokenStore tokenStore = mock(ExtendedTokenStore.class);
+  private TokenRevocationRepository repository = mock(TokenRevocationRepository.class);
+
+  private TokenRevocationService service = new TokenRevocationService();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(service, "tokenStore", tokenStore);
+    ReflectionTestUtils.setField(service, "tokenRevocationRepository", repository);
+    ReflectionTestUtils.setField(service, "maxFeedSize", 10);
+  }
+
+  @Test
+  public void shouldPublishIdOfRevokedToken() {
+    service.revokeToken(TOKEN);
+
+    verify(tokenStore).removeAccessToken(argThat(token -> TOKEN.equals(token.getValue())));
+    verify(repository).publish(DigestUtils.md5Hex(TOKEN), null);
+  }
+
+  @Test
+  public void shouldPublishUserWhoseTokensWereRevoked() {
+    when(tokenStore.removeTokensByUserName(USERNAME)).thenReturn(ImmutableList.of(TOKEN));
+
+    service.revokeUserTokens(USERNAME);
+
+    verify(repository).publishUsers(ImmutableList.of(USERNAME));
+  }
+
+  @Test
+  public void shouldPublishAllUsersWithTokensAtOnce() {
+    when(tokenStore.removeTokensByUserName(USERNAME)).thenReturn(ImmutableList.of(TOKEN));
+    when(tokenStore.removeTokensByUserName("other")).thenReturn(Collections.emptyList());
+    when(tokenStore.removeTokensByUserName("third")).thenReturn(ImmutableList.of("another"));
+
+    service.revokeUsersTokens(ImmutableList.of(USERNAME, "other", "third"));
+
+    verify(repository).publishUsers(ImmutableList.of(USERNAME, "third"));
+    verify(repository, never()).publish(any(), any());
+  }
+
+  @Test
+  public void shouldNotPublishUserWithoutTokens() {
+    when(tokenStore.removeTokensByUserName(USERNAME)).thenReturn(Collections.emptyList());
+
+    service.revokeUserTokens(USERNAME);
+
+    verify(repository, never()).publishUsers(any());
+  }
+
+  @Test
+  public void shouldReturnRevocationsNewerThanGivenVersion() {
+    TokenRevocation revocation = mock(TokenRevocation.class);
+    when(revocation.getVersion()).thenReturn(7L);
+
+    when(repository.findPurgedVersion()).thenReturn(2L);
+    when(repository.findLatestVersion()).thenReturn(9L);
+    when(repository.findByVersionGreaterThanOrderByVersionAsc(eq(5L), any(Pageable.class)))
+        .thenReturn(ImmutableList.of(revocation));
+
+    TokenRevocationFeedDto feed = service.getRevocations(5);
+
+    assertThat(feed.getVersion(), is(7L));
+    assertThat(feed.isComplete(), is(true));
+    assertThat(feed.getRevocations(), hasSize(1));
+  }
+
+  @Test
+  public void shouldReturnIncompleteFeedIfOlderRevocationsWereRemoved() {
+    when(repository.findPurgedVersion()).thenReturn(2L);
+    when(repository.findLatestVersion()).thenReturn(9L);
+
+    TokenRevocationFeedDto feed = service.getRevocations(1);
+
+    assertThat(feed.getVersion(), is(9L));
+    assertThat(feed.isComplete(), is(false));
+  }
+
+  @Test
+  public void shouldReturnIncompleteFeedIfAllRevocationsWereRemoved() {
+    when(repository.findPurgedVersion()).thenReturn(9L);
+    when(repository.findLatestVersion()).thenReturn(9L);
+
+    TokenRevocationFeedDto feed = service.getRevocations(4);
+
+    assertThat(feed.getVersion(), is(9L));
+    assertThat(feed.isComplete(), is(false));
+    assertThat(feed.getRevocations(), hasSize(0));
+  }
+
+  @Test
+  public void shouldReturnLatestVersionIfNothingWasRevokedSince() {
+    when(repository.findPurgedVersion()).thenReturn(9L);
+    when(repository.findLatestVersion()).thenReturn(9L);
+
+    TokenRevocationFeedDto feed = service.getRevocations(9);
+
+    assertThat(feed.getVersion(), is(9L));
+    assertThat(feed.isComplete(), is(true));
+    assertThat(feed.getRevocations(), hasSize(0));
+  }
+
+  @Test
+  public void shouldRememberVersionOfRemovedRevocations() {
+    when(repository.findLatestVersionRevokedBefore(any(ZonedDateTime.class))).thenReturn(6L);
+
+    service.removeOldRevocations();
+
+    InOrder inOrder = inOrder(repository);
+    inOrder.verify(repository).updatePurgedVersion(6L);
+    inOrder.verify(repository).deleteByVersionLessThanEqual(6L);
+  }
+
+  @Test
+  public void shouldNotRemoveAnythingIfNoRevocationIsOld() {
+    service.removeOldRevocations();
+
+    verify(repository, never()).updatePurgedVersion(anyLong());
+    verify(repository, never()).deleteByVersionLessThanEqual(anyLong());
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.auth.UserDataBuilder;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto.FailedUserDetailsResponse;
+import org.openlmis.auth.dto.UserAuthDetailsResponseDto.UserAuthResponse;
+import org.openlmis.auth.dto.UserDto;
+import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.referencedata.UserReferenceDataLookup;
+import org.openlmis.auth.service.referencedata.UserReferenceDataService;
+import org.openlmis.auth.web.UserDtoValidator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.validation.Errors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserBatchServiceTest {
+
+  @Mock
+  private UserRepository userRepository;
+
+  @Mock
+  private UserDtoValidator userDtoValidator;
+
+  @Mock
+  private UserReferenceDataService userReferenceDataService;
+
+  @Mock
+  private PasswordHashingService passwordHashingService;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private TransactionStatus transactionStatus;
+
+  @Mock
+  private EntityManager entityManager;
+
+  @InjectMocks
+  private UserBatchService userBatchService;
+
+  private User existing = new UserDataBuilder().build();
+  private UserDto existingDto = toDto(existing);
+  private UserDto newDto = toDto(new UserDataBuilder().build());
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(userBatchService, "chunkSize", 10);
+    ReflectionTestUtils.setField(userBatchService, "poolSize", 2);
+    ReflectionTestUtils.setField(userBatchService, "queueCapacity", 10);
+    userBatchService.init();
+
+    given(transactionManager.getTransaction(any())).willReturn(transactionStatus);
+    given(userRepository.findAllById(anyIterable()))
+        .willReturn(Collections.singletonList(existing));
+  }
+
+  @After
+  public void tearDown() {
+    userBatchService.destroy();
+  }
+
+  @Test
+  public void shouldInsertNewUsersAndUpdateExistingOnes() {
+    existingDto.setUsername("updated");
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    assertThat(ids(result.getSuccessfulResults())).containsExactly(existing.getId(),
+        newDto.getId());
+    assertThat(result.getFailedResults()).isEmpty();
+    assertThat(existing.getUsername()).isEqualTo("updated");
+
+    ArgumentCaptor<User> persisted = ArgumentCaptor.forClass(User.class);
+    verify(entityManager).persist(persisted.capture());
+    assertThat(persisted.getValue().getId()).isEqualTo(newDto.getId());
+  }
+
+  @Test
+  public void shouldUpdateNewUserIfItsIdRepeatsInBatch() {
+    UserDto repeated = toDto(new UserDataBuilder().build());
+    repeated.setId(newDto.getId());
+    repeated.setUsername("repeated");
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(newDto, existingDto, repeated));
+
+    assertThat(ids(result.getSuccessfulResults())).containsExactly(newDto.getId(),
+        existing.getId(), newDto.getId());
+    assertThat(result.getFailedResults()).isEmpty();
+
+    ArgumentCaptor<User> persisted = ArgumentCaptor.forClass(User.class);
+    verify(entityManager).persist(persisted.capture());
+    assertThat(persisted.getValue().getUsername()).isEqualTo("repeated");
+  }
+
+  @Test
+  public void shouldSaveUsersWithSameIdInOneChunk() {
+    ReflectionTestUtils.setField(userBatchService, "chunkSize", 1);
+    UserDto repeated = toDto(new UserDataBuilder().build());
+    repeated.setId(newDto.getId());
+
+    userBatchService.saveAuthUsers(Arrays.asList(newDto, existingDto, repeated));
+
+    verify(transactionManager, times(2)).getTransaction(any());
+    verify(entityManager).persist(any(User.class));
+  }
+
+  @Test
+  public void shouldReturnValidationErrors() {
+    willAnswer(invocation -> {
+      invocation.getArgument(1, Errors.class).reject("code", "message");
+      return null;
+    }).given(userDtoValidator)
+        .validate(eq(newDto), any(Errors.class), any(UserReferenceDataLookup.class));
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    assertThat(ids(result.getSuccessfulResults())).containsExactly(existing.getId());
+    assertThat(ids(result.getFailedResults())).containsExactly(newDto.getId());
+    assertThat(((FailedUserDetailsResponse) result.getFailedResults().get(0)).getErrors())
+        .containsExactly("message");
+  }
+
+  @Test
+  public void shouldSaveEachChunkInSeparateTransaction() {
+    ReflectionTestUtils.setField(userBatchService, "chunkSize", 1);
+
+    userBatchService.saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    verify(transactionManager, times(2)).getTransaction(any());
+    verify(transactionManager, times(2)).commit(any());
+  }
+
+  @Test
+  public void shouldSaveUsersOneByOneIfChunkCouldNotBeCommitted() {
+    willThrow(new TransactionSystemException("commit failed"))
+        .willDoNothing()
+        .given(transactionManager).commit(any(TransactionStatus.class));
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    assertThat(ids(result.getSuccessfulResults())).containsExactly(existing.getId(),
+        newDto.getId());
+    assertThat(result.getFailedResults()).isEmpty();
+    verify(transactionManager, times(3)).commit(any());
+  }
+
+  @Test
+  public void shouldReturnUsersThatCouldNotBeSaved() {
+    willThrow(new TransactionSystemException("commit failed"))
+        .given(transactionManager).commit(any(TransactionStatus.class));
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    assertThat(result.getSuccessfulResults()).isEmpty();
+    assertThat(ids(result.getFailedResults())).containsExactly(existing.getId(),
+        newDto.getId());
+  }
+
+  @Test
+  public void shouldFetchReferenceDataUsersOfChunkAtOnce() {
+    userBatchService.saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    verify(userReferenceDataService)
+        .findByIds(Arrays.asList(existingDto.getId(), newDto.getId()));
+  }
+
+  @Test
+  public void shouldHashPasswordsBeforeStartingTransaction() {
+    newDto.setPassword("password");
+    given(passwordHashingService.encode("password")).willReturn("hash");
+
+    userBatchService.saveAuthUsers(Collections.singletonList(newDto));
+
+    InOrder order = inOrder(passwordHashingService, transactionManager);
+    order.verify(passwordHashingService).encode("password");
+    order.verify(transactionManager).getTransaction(any());
+
+    ArgumentCaptor<User> persisted = ArgumentCaptor.forClass(User.class);
+    verify(entityManager).persist(persisted.capture());
+    assertThat(persisted.getValue().getPassword()).isEqualTo("hash");
+  }
+
+  @Test
+  public void shouldReturnUsersWhosePasswordsCouldNotBeHashed() {
+    newDto.setPassword("password");
+    willThrow(new IllegalStateException("busy"))
+        .given(passwordHashingService).encode("password");
+
+    UserAuthDetailsResponseDto result = userBatchService
+        .saveAuthUsers(Arrays.asList(existingDto, newDto));
+
+    assertThat(ids(result.getSuccessfulResults())).containsExactly(existing.getId());
+    assertThat(ids(result.getFailedResults())).containsExactly(newDto.getId());
+  }
+
+  private UserDto toDto(User user) {
+    UserDto dto = new UserDto();
+    user.export(dto);
+
+    return dto;
+  }
+
+  private List<Object> ids(List<UserAuthResponse> responses) {
+    return Arrays.asList(responses
+        .stream()
+        .map(UserAuthResponse::getReferenceDataUserId)
+        .toArray());
+  }
+}
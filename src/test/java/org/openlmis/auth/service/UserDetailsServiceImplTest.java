@@ -16,6 +16,9 @@
 package org.openlmis.auth.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Test;
@@ -23,6 +26,7 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.auth.UserDataBuilder;
 import org.openlmis.auth.domain.User;
 import org.openlmis.auth.repository.UserRepository;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -56,4 +60,19 @@ public class UserDetailsServiceImplTest {
     when(userRepository.findOneByUsernameIgnoreCase(USERNAME)).thenReturn(null);
     userDetailsService.loadUserByUsername(USERNAME);
   }
+
+  @Test
+  public void shouldUpdatePassword() {
+    // given
+    User user = new UserDataBuilder().withPassword("old").build();
+    when(userRepository.findOneByUsernameIgnoreCase(user.getUsername())).thenReturn(user);
+
+    // when
+    UserDetails actual = userDetailsService.updatePassword(user, "new");
+
+    // then
+    assertThat(actual).isEqualTo(user);
+    verify(userRepository).updatePassword(user.getId(), "old", "new");
+    verify(userRepository, never()).save(any(User.class));
+  }
 }
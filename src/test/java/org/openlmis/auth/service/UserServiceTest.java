@@ -16,17 +16,18 @@
 package org.openlmis.auth.service;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -35,17 +36,23 @@ import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openlmis.auth.SaveAnswer;
 import org.openlmis.auth.UserDataBuilder;
-import org.openlmis.auth.domain.UnsuccessfulAuthenticationAttempt;
 import org.openlmis.auth.domain.User;
 import org.openlmis.auth.dto.UnlockResponseDto;
+import org.openlmis.auth.dto.UserDeleteResponseDto;
 import org.openlmis.auth.dto.UserDto;
+import org.openlmis.auth.repository.PasswordResetTokenRepository;
 import org.openlmis.auth.repository.UnsuccessfulAuthenticationAttemptRepository;
 import org.openlmis.auth.repository.UserRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -57,6 +64,18 @@ public class UserServiceTest {
   @Mock
   private UnsuccessfulAuthenticationAttemptRepository attemptCounterRepository;
 
+  @Mock
+  private PasswordResetTokenRepository passwordResetTokenRepository;
+
+  @Mock
+  private PermissionService permissionService;
+
+  @Mock
+  private PasswordHashingService passwordHashingService;
+
+  @Mock
+  private TokenRevocationService tokenRevocationService;
+
   @InjectMocks
   private UserService userService;
 
@@ -69,6 +88,8 @@ public class UserServiceTest {
   public void shouldCreateNewUser() {
     // given
     when(userRepository.findById(any(UUID.class))).thenReturn(Optional.empty());
+    when(passwordHashingService.getPasswordEncoder())
+        .thenReturn(NoOpPasswordEncoder.getInstance());
 
     // when
     User user = new UserDataBuilder().build();
@@ -91,6 +112,9 @@ public class UserServiceTest {
 
     when(userRepository.findById(any(UUID.class))).thenReturn(Optional.of(oldUser));
 
+    PasswordEncoder encoder = NoOpPasswordEncoder.getInstance();
+    when(passwordHashingService.getPasswordEncoder()).thenReturn(encoder);
+
     // when
     User user = new UserDataBuilder().build();
 
@@ -101,7 +125,7 @@ public class UserServiceTest {
 
     // then
     verify(userRepository).save(any(User.class));
-    verify(oldUser).updateFrom(request);
+    verify(oldUser).updateFrom(request, encoder);
   }
 
   @Test
@@ -114,103 +138,204 @@ public class UserServiceTest {
     verify(userRepository).findAll();
   }
 
+  @Test
+  public void shouldEvictPermissionDecisionsOfDeletedUsers() {
+    ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "deleteChunkSize", 10);
+
+    User user = new UserDataBuilder().build();
+    List<UUID> userIds = Collections.singletonList(user.getId());
+    when(userRepository.deleteByUserIds(userIds)).thenReturn(Collections.singletonList(user));
+
+    userService.deleteByUserIds(userIds);
+
+    verify(permissionService).evictDecisions(Collections.singleton(user.getId()));
+  }
+
+  @Test
+  public void shouldRevokeTokensOfDeletedUsersBeforeEvictingDecisions() {
+    ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "deleteChunkSize", 10);
+
+    User user = new UserDataBuilder().build();
+    List<UUID> userIds = Collections.singletonList(user.getId());
+    when(userRepository.deleteByUserIds(userIds)).thenReturn(Collections.singletonList(user));
+
+    userService.deleteByUserIds(userIds);
+
+    InOrder inOrder = inOrder(tokenRevocationService, userRepository, permissionService);
+    inOrder.verify(userRepository).deleteByUserIds(userIds);
+    inOrder.verify(tokenRevocationService)
+        .revokeUsersTokens(argThat(names -> names.contains(user.getUsername())
+            && names.size() == 1));
+    inOrder.verify(permissionService).evictDecisions(Collections.singleton(user.getId()));
+  }
+
+  @Test
+  public void shouldDeleteUsersAndTheirPasswordResetTokensInChunks() {
+    ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "deleteChunkSize", 2);
+
+    User first = new UserDataBuilder().build();
+    User second = new UserDataBuilder().build();
+    UUID missingId = UUID.randomUUID();
+    List<UUID> firstChunk = Arrays.asList(first.getId(), missingId);
+    List<UUID> secondChunk = Collections.singletonList(second.getId());
+    when(userRepository.deleteByUserIds(firstChunk))
+        .thenReturn(Collections.singletonList(first));
+    when(userRepository.deleteByUserIds(secondChunk))
+        .thenReturn(Collections.singletonList(second));
+
+    UserDeleteResponseDto response = userService
+        .deleteByUserIds(Arrays.asList(first.getId(), missingId, second.getId()));
+
+    assertEquals(Arrays.asList(first.getId(), second.getId()), response.getDeleted());
+    assertEquals(Collections.singletonList(missingId), response.getNotFound());
+
+    InOrder inOrder = inOrder(passwordResetTokenRepository, userRepository);
+    inOrder.verify(passwordResetTokenRepository).deleteByUserIds(firstChunk);
+    inOrder.verify(userRepository).deleteByUserIds(firstChunk);
+    inOrder.verify(passwordResetTokenRepository).deleteByUserIds(secondChunk);
+    inOrder.verify(userRepository).deleteByUserIds(secondChunk);
+  }
+
   @Test
   public void shouldUnlockUserAndResetCounter() {
     User user = new UserDataBuilder().asLockedOut(true).build();
-    UnsuccessfulAuthenticationAttempt counter = new UnsuccessfulAuthenticationAttempt(user);
-    counter.incrementCounter();
 
-    when(userRepository.findByIdForUpdate(user.getId())).thenReturn(Optional.of(user));
-    when(attemptCounterRepository.findByUserId(user.getId())).thenReturn(Optional.of(counter));
+    when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    when(attemptCounterRepository.resetCounter(user.getId())).thenReturn(1);
 
     String username = userService.unlockUser(user.getId());
 
     assertEquals(user.getUsername(), username);
-    assertFalse(user.isLockedOut());
-    assertEquals(Integer.valueOf(0), counter.getAttemptCounter());
-    verify(userRepository).findByIdForUpdate(user.getId());
-    verify(attemptCounterRepository).save(counter);
-    verify(userRepository).save(user);
+    InOrder inOrder = inOrder(attemptCounterRepository, userRepository);
+    inOrder.verify(attemptCounterRepository).resetCounter(user.getId());
+    inOrder.verify(userRepository).updateLockedOut(user.getId(), false);
+    verify(userRepository, never()).save(any(User.class));
   }
 
   @Test
   public void shouldUnlockUserWithoutCounterRow() {
     User user = new UserDataBuilder().asLockedOut(true).build();
 
-    when(userRepository.findByIdForUpdate(user.getId())).thenReturn(Optional.of(user));
-    when(attemptCounterRepository.findByUserId(user.getId())).thenReturn(Optional.empty());
+    when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    when(attemptCounterRepository.resetCounter(user.getId())).thenReturn(0);
 
     String username = userService.unlockUser(user.getId());
 
     assertEquals(user.getUsername(), username);
-    assertFalse(user.isLockedOut());
-    verify(attemptCounterRepository, never()).save(any(UnsuccessfulAuthenticationAttempt.class));
-    verify(userRepository).save(user);
+    verify(userRepository).updateLockedOut(user.getId(), false);
   }
 
   @Test
   public void shouldReturnNullWhenUnlockingMissingUser() {
     UUID userId = UUID.randomUUID();
-    when(userRepository.findByIdForUpdate(userId)).thenReturn(Optional.empty());
+    when(userRepository.findById(userId)).thenReturn(Optional.empty());
 
     String username = userService.unlockUser(userId);
 
     assertNull(username);
-    verify(userRepository, never()).save(any(User.class));
-    verify(attemptCounterRepository, never()).save(any(UnsuccessfulAuthenticationAttempt.class));
+    verify(userRepository, never()).updateLockedOut(any(UUID.class), anyBoolean());
+    verify(attemptCounterRepository, never()).resetCounter(any(UUID.class));
   }
 
   @Test
-  public void shouldGetAuthUsersFilteredByLockoutState() {
-    User locked = new UserDataBuilder().asLockedOut(true).build();
-    User unlocked = new UserDataBuilder().asLockedOut(false).build();
-    when(userRepository.findAll()).thenReturn(Arrays.asList(locked, unlocked));
-    when(attemptCounterRepository.findAll()).thenReturn(Collections.emptyList());
-
-    List<UserDto> all = userService.getAuthUsers(null);
-    assertEquals(2, all.size());
-    assertTrue(all.stream().allMatch(dto -> dto.getPassword() == null));
+  public void shouldGetAuthUsersInAnyLockoutStateFromTheFirstId() {
+    List<UserDto> users = Collections.singletonList(new UserDto());
+    when(userRepository.findAuthUsers(new UUID(0, 0), Arrays.asList(true, false),
+        Pageable.unpaged())).thenReturn(users);
 
-    List<UserDto> lockedOnly = userService.getAuthUsers(true);
-    assertEquals(1, lockedOnly.size());
-    assertEquals(locked.getId(), lockedOnly.get(0).getId());
-    assertTrue(lockedOnly.get(0).isLockedOut());
-
-    List<UserDto> unlockedOnly = userService.getAuthUsers(false);
-    assertEquals(1, unlockedOnly.size());
-    assertEquals(unlocked.getId(), unlockedOnly.get(0).getId());
+    assertEquals(users, userService.getAuthUsers(null, null, Pageable.unpaged()));
   }
 
   @Test
-  public void shouldPopulateLastUnsuccessfulAuthenticationAttemptDate() {
-    User locked = new UserDataBuilder().asLockedOut(true).build();
-    UnsuccessfulAuthenticationAttempt attempt = new UnsuccessfulAuthenticationAttempt(locked);
-    final ZonedDateTime attemptDate = attempt.getLastUnsuccessfulAuthenticationAttemptDate();
-    when(userRepository.findAll()).thenReturn(Collections.singletonList(locked));
-    when(attemptCounterRepository.findAll()).thenReturn(Collections.singletonList(attempt));
-
-    List<UserDto> users = userService.getAuthUsers(true);
-
-    assertEquals(1, users.size());
-    assertEquals(attemptDate, users.get(0).getLastUnsuccessfulAuthenticationAttemptDate());
+  public void shouldGetAuthUsersFilteredByLockoutStateAfterGivenId() {
+    UUID afterId = UUID.randomUUID();
+    PageRequest pageable = PageRequest.of(0, 10);
+    List<UserDto> users = Collections.singletonList(new UserDto());
+    when(userRepository.findAuthUsers(afterId, Collections.singletonList(true), pageable))
+        .thenReturn(users);
+
+    assertEquals(users, userService.getAuthUsers(true, afterId, pageable));
   }
 
   @Test
   public void shouldBulkUnlockUsersGroupingResults() {
     ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "unlockChunkSize", 10);
 
     User user = new UserDataBuilder().asLockedOut(true).build();
     UUID missingId = UUID.randomUUID();
-    when(userRepository.findByIdForUpdate(user.getId())).thenReturn(Optional.of(user));
-    when(userRepository.findByIdForUpdate(missingId)).thenReturn(Optional.empty());
-    when(attemptCounterRepository.findByUserId(user.getId())).thenReturn(Optional.empty());
+    List<UUID> userIds = Arrays.asList(user.getId(), missingId);
+    when(userRepository.unlockByIds(userIds)).thenReturn(Collections.singletonList(user));
 
-    UnlockResponseDto response =
-        userService.unlockUsers(Arrays.asList(user.getId(), missingId), "admin");
+    UnlockResponseDto response = userService.unlockUsers(userIds, "admin");
 
     assertEquals(Collections.singletonList(user.getId()), response.getUnlocked());
     assertEquals(Collections.singletonList(missingId), response.getNotFound());
     assertTrue(response.getFailed().isEmpty());
-    assertFalse(user.isLockedOut());
+    verify(attemptCounterRepository).resetCounters(userIds);
+    verify(userRepository, never()).findById(any(UUID.class));
+  }
+
+  @Test
+  public void shouldBulkUnlockUsersInChunks() {
+    ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "unlockChunkSize", 2);
+
+    User first = new UserDataBuilder().asLockedOut(true).build();
+    User second = new UserDataBuilder().asLockedOut(true).build();
+    User third = new UserDataBuilder().asLockedOut(true).build();
+    List<UUID> firstChunk = Arrays.asList(first.getId(), second.getId());
+    List<UUID> secondChunk = Collections.singletonList(third.getId());
+    when(userRepository.unlockByIds(firstChunk)).thenReturn(Arrays.asList(second, first));
+    when(userRepository.unlockByIds(secondChunk))
+        .thenReturn(Collections.singletonList(third));
+
+    UnlockResponseDto response = userService.unlockUsers(
+        Arrays.asList(first.getId(), second.getId(), first.getId(), third.getId()), "admin");
+
+    assertEquals(Arrays.asList(first.getId(), second.getId(), third.getId()),
+        response.getUnlocked());
+    assertTrue(response.getNotFound().isEmpty());
+    verify(attemptCounterRepository).resetCounters(firstChunk);
+    verify(attemptCounterRepository).resetCounters(secondChunk);
+  }
+
+  @Test
+  public void shouldUnlockUsersOneByOneWhenChunkFails() {
+    ReflectionTestUtils.setField(userService, "self", userService);
+    ReflectionTestUtils.setField(userService, "unlockChunkSize", 10);
+
+    User user = new UserDataBuilder().asLockedOut(true).build();
+    UUID brokenId = UUID.randomUUID();
+    List<UUID> userIds = Arrays.asList(user.getId(), brokenId);
+    when(userRepository.unlockByIds(userIds)).thenThrow(new IllegalStateException("test"));
+    when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    when(userRepository.findById(brokenId)).thenThrow(new IllegalStateException("test"));
+
+    UnlockResponseDto response = userService.unlockUsers(userIds, "admin");
+
+    assertEquals(Collections.singletonList(user.getId()), response.getUnlocked());
+    assertTrue(response.getNotFound().isEmpty());
+    assertEquals(Collections.singletonList(brokenId), response.getFailed());
+    verify(userRepository).updateLockedOut(user.getId(), false);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotStartWithEmptyUnlockChunks() {
+    ReflectionTestUtils.setField(userService, "deleteChunkSize", 10);
+    ReflectionTestUtils.setField(userService, "unlockChunkSize", 0);
+
+    userService.init();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotStartWithEmptyDeleteChunks() {
+    ReflectionTestUtils.setField(userService, "deleteChunkSize", 0);
+    ReflectionTestUtils.setField(userService, "unlockChunkSize", 10);
+
+    userService.init();
   }
 }
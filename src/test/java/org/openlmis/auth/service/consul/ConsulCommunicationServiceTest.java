@@ -16,42 +16,49 @@
 package org.openlmis.auth.service.consul;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
-import static org.mockito.Mockito.atLeastOnce;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.openlmis.auth.service.consul.ConsulCommunicationService.SERVICE_SEPARATOR;
+import static org.openlmis.auth.service.consul.ConsulCommunicationService.CONSUL_INDEX_HEADER;
 
-import com.google.common.collect.Sets;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.openlmis.auth.domain.Client;
 import org.openlmis.auth.dto.consul.ServicesListDto;
 import org.openlmis.auth.repository.ClientRepository;
+import org.openlmis.auth.service.ClientDetailsServiceImpl;
 import org.openlmis.auth.service.ConfigurationSettingService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ConsulCommunicationServiceTest {
 
+  private static final String SERVICE_TAG = "openlims-service";
+  private static final String SERVICES_URL = "http://consul:8500/v1/catalog/services";
+
   @Mock
   private RestTemplate restTemplate;
 
   @Mock
   private ClientRepository clientRepository;
 
+  @Mock
+  private ClientDetailsServiceImpl clientDetailsService;
+
   @Mock
   private ConfigurationSettingService configurationSettingService;
 
@@ -61,84 +68,150 @@ public class ConsulCommunicationServiceTest {
   @Before
   public void setUp() {
     consulCommunicationService.setRestTemplate(restTemplate);
+    mockConfigurationSettings();
   }
 
   @Test
   public void shouldUpdateOAuthResourcesWhenResourcesChanged() {
     // given
-    mockConfigurationSettings();
+    mockExternalResponse(5, generateServicesList(Arrays.asList("requisition", "auth"),
+        Collections.singletonList("random-service")));
+    given(clientRepository.updateResourceIds("auth,requisition"))
+        .willReturn(Collections.singletonList("client"));
+
+    // when
+    consulCommunicationService.updateOAuthResources();
 
-    List<String> validServices = Arrays.asList("auth", "requisition");
-    List<String> invalidServices = Collections.singletonList("random-service");
-    ServicesListDto expectedBody = generateServicesList(validServices, invalidServices);
-    mockExternalResponse(expectedBody);
+    // then
+    verify(restTemplate).getForEntity(SERVICES_URL + "?index=0&wait=20s",
+        ServicesListDto.class);
+    verify(clientRepository).updateResourceIds("auth,requisition");
+    verify(clientDetailsService).evict("client");
+    assertEquals("auth,requisition", consulCommunicationService.getResourceIds());
+  }
 
-    Client client = new Client();
-    client.setResourceIds("auth,referencedata");
-    mockRepositoryClients(client);
+  @Test
+  public void shouldWaitForChangesAfterLastSeenIndex() {
+    // given
+    mockExternalResponse(5, generateServicesList(Collections.singletonList("auth"),
+        Collections.emptyList()));
 
     // when
     consulCommunicationService.updateOAuthResources();
+    consulCommunicationService.updateOAuthResources();
 
     // then
-    verify(clientRepository, atLeastOnce()).save(eq(client));
+    verify(restTemplate).getForEntity(SERVICES_URL + "?index=5&wait=20s",
+        ServicesListDto.class);
+  }
 
-    Set<String> expectedResources = new HashSet<>(validServices);
-    Set<String> clientResources = Sets.newHashSet(
-        client.getResourceIds().split(SERVICE_SEPARATOR));
+  @Test
+  public void shouldApplyResourcesAgainOnceWhenWaitTimeAfterChangePassed() {
+    // given
+    mockExternalResponse(5, generateServicesList(Collections.singletonList("auth"),
+        Collections.emptyList()));
+    consulCommunicationService.updateOAuthResources();
+    given(clientRepository.updateResourceIds("auth"))
+        .willReturn(Collections.singletonList("new-client"));
+
+    // when
+    consulCommunicationService.updateOAuthResources();
 
-    assertEquals(expectedResources, clientResources);
+    // then
+    verify(clientRepository, times(2)).updateResourceIds("auth");
+    verify(clientDetailsService).evict("new-client");
   }
 
   @Test
-  public void shouldNotUpdateOAuthResourcesWhenResourcesNotChanged() {
+  public void shouldNotUpdateClientsWhileCatalogStaysTheSame() {
     // given
-    mockConfigurationSettings();
+    mockExternalResponse(5, generateServicesList(Collections.singletonList("auth"),
+        Collections.emptyList()));
+    consulCommunicationService.updateOAuthResources();
+    consulCommunicationService.updateOAuthResources();
+
+    // when
+    consulCommunicationService.updateOAuthResources();
+    consulCommunicationService.updateOAuthResources();
+
+    // then
+    verify(clientRepository, times(2)).updateResourceIds("auth");
+  }
+
+  @Test
+  public void shouldKeepResourcesIfClientsCouldNotBeUpdated() {
+    // given
+    mockExternalResponse(5, generateServicesList(Collections.singletonList("auth"),
+        Collections.emptyList()));
+    given(clientRepository.updateResourceIds("auth"))
+        .willThrow(new IllegalStateException("test"));
+
+    // when
+    assertThrows(IllegalStateException.class,
+        () -> consulCommunicationService.updateOAuthResources());
+
+    // then
+    assertNull(consulCommunicationService.getResourceIds());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotStartIfWaitTimeIsNotShorterThanReadTimeout() {
+    // given
+    given(configurationSettingService.getHttpClientReadTimeoutMs()).willReturn(21000L);
 
-    ServicesListDto expectedBody = generateServicesList(
-        Collections.singletonList("referencedata"), Collections.singletonList("random-service"));
-    mockExternalResponse(expectedBody);
+    // when
+    consulCommunicationService.init();
+  }
 
-    Client client = new Client();
-    client.setResourceIds("referencedata");
-    mockRepositoryClients(client);
+  @Test
+  public void shouldStartIfWaitTimeWithJitterIsShorterThanReadTimeout() {
+    // given
+    given(configurationSettingService.getHttpClientReadTimeoutMs()).willReturn(21500L);
 
     // when
+    consulCommunicationService.init();
+  }
+
+  @Test
+  public void shouldNotUpdateOAuthResourcesWhenResourcesNotChanged() {
+    // given
+    mockExternalResponse(5, generateServicesList(Collections.singletonList("referencedata"),
+        Collections.singletonList("random-service")));
     consulCommunicationService.updateOAuthResources();
 
-    // then
-    verify(clientRepository, never()).save(eq(client));
+    mockExternalResponse(6, generateServicesList(Collections.singletonList("referencedata"),
+        Collections.singletonList("other-service")));
+
+    // when
+    consulCommunicationService.updateOAuthResources();
 
+    // then
+    verify(clientRepository, times(1)).updateResourceIds("referencedata");
+    verify(clientDetailsService, never()).evict(anyString());
   }
 
   private void mockConfigurationSettings() {
     given(configurationSettingService.getConsulServicesUrl()).willReturn("/v1/catalog/services");
-    given(configurationSettingService.getConsulServiceTag()).willReturn("openlims-service");
+    given(configurationSettingService.getConsulServiceTag()).willReturn(SERVICE_TAG);
     given(configurationSettingService.getConsulProtocol()).willReturn("http");
     given(configurationSettingService.getConsulHost()).willReturn("consul");
     given(configurationSettingService.getConsulPort()).willReturn(8500);
+    given(configurationSettingService.getConsulWatchWaitSeconds()).willReturn(20L);
   }
 
-  private void mockRepositoryClients(Client... clients) {
-    given(clientRepository.findAll()).willReturn(Arrays.asList(clients));
-  }
-
-  private void mockExternalResponse(ServicesListDto body) {
-    String expectedUrl = generateExpectedUrl();
-
-    ResponseEntity<ServicesListDto> expectedResponse = mock(ResponseEntity.class);
-    given(expectedResponse.getBody()).willReturn(body);
+  private void mockExternalResponse(long index, ServicesListDto body) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(CONSUL_INDEX_HEADER, String.valueOf(index));
 
-    given(restTemplate.getForEntity(expectedUrl, ServicesListDto.class))
-        .willReturn(expectedResponse);
+    given(restTemplate.getForEntity(anyString(), eq(ServicesListDto.class)))
+        .willReturn(new ResponseEntity<>(body, headers, HttpStatus.OK));
   }
 
   private ServicesListDto generateServicesList(List<String> valid, List<String> invalid) {
     ServicesListDto services = new ServicesListDto();
-    String serviceTag = configurationSettingService.getConsulServiceTag();
 
     for (String service : valid) {
-      services.put(service, Collections.singletonList(serviceTag));
+      services.put(service, Collections.singletonList(SERVICE_TAG));
     }
 
     for (String service : invalid) {
@@ -147,13 +220,4 @@ public class ConsulCommunicationServiceTest {
 
     return services;
   }
-
-  private String generateExpectedUrl() {
-    String services = configurationSettingService.getConsulServicesUrl();
-    String protocol = configurationSettingService.getConsulProtocol();
-    String host = configurationSettingService.getConsulHost();
-    int port = configurationSettingService.getConsulPort();
-
-    return String.format("%s://%s:%d%s", protocol, host, port, services);
-  }
 }
@@ -0,0 +1,143 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service.notification;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.auth.DummyUserMainDetailsDto;
+import org.openlmis.auth.UserDataBuilder;
+import org.openlmis.auth.domain.OutboxNotification;
+import org.openlmis.auth.domain.User;
+import org.openlmis.auth.dto.LocalizedMessageDto;
+import org.openlmis.auth.exception.ExternalApiException;
+import org.openlmis.auth.i18n.ExposedMessageSource;
+import org.openlmis.auth.repository.UserRepository;
+import org.openlmis.auth.service.referencedata.UserReferenceDataService;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+
+public class NotificationOutboxDispatcherTest {
+  private static final String SUBJECT = "subject";
+  private static final String BODY = "body";
+
+  private NotificationOutbox notificationOutbox = mock(NotificationOutbox.class);
+  private NotificationService notificationService = mock(NotificationService.class);
+  private UserReferenceDataService userReferenceDataService =
+      mock(UserReferenceDataService.class);
+  private UserRepository userRepository = mock(UserRepository.class);
+  private ExposedMessageSource messageSource = mock(ExposedMessageSource.class);
+
+  private NotificationOutboxDispatcher dispatcher = new NotificationOutboxDispatcher();
+
+  private User user = new UserDataBuilder().build();
+  private OutboxNotification notification = new OutboxNotification();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(dispatcher, "notificationOutbox", notificationOutbox);
+    ReflectionTestUtils.setField(dispatcher, "notificationService", notificationService);
+    ReflectionTestUtils.setField(dispatcher, "userReferenceDataService",
+        userReferenceDataService);
+    ReflectionTestUtils.setField(dispatcher, "userRepository", userRepository);
+    ReflectionTestUtils.setField(dispatcher, "messageSource", messageSource);
+    ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+    ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+    ReflectionTestUtils.setField(dispatcher, "backoffSeconds", 30L);
+
+    notification.setId(UUID.randomUUID());
+    notification.setUserId(user.getId());
+    notification.setSubjectKey(SUBJECT);
+    notification.setBodyKey(BODY);
+    notification.setBodyUrl("http://localhost/reset/1");
+    notification.setLocale("en");
+    notification.setAttempts(1);
+
+    when(notificationOutbox.claim(eq(10), anyLong())).thenReturn(ImmutableList.of(notification));
+    when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    when(userReferenceDataService.findOne(user.getId()))
+        .thenReturn(new DummyUserMainDetailsDto());
+    when(messageSource.getMessage(anyString(), any(String[].class), any(Locale.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0, String.class));
+  }
+
+  @Test
+  public void shouldSendAndRemoveEmail() {
+    dispatcher.dispatch();
+
+    verify(notificationService).notify(user, SUBJECT, BODY);
+    verify(notificationOutbox).remove(notification.getId());
+  }
+
+  @Test
+  public void shouldRescheduleEmailWithBackoffIfItCanNotBeSent() {
+    notification.setAttempts(2);
+    doThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+        .when(notificationService).notify(user, SUBJECT, BODY);
+
+    dispatcher.dispatch();
+
+    verify(notificationOutbox).reschedule(notification.getId(), 60);
+    verify(notificationOutbox, never()).remove(any(UUID.class));
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxAttempts() {
+    notification.setAttempts(3);
+    doThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+        .when(notificationService).notify(user, SUBJECT, BODY);
+
+    dispatcher.dispatch();
+
+    verify(notificationOutbox).remove(notification.getId());
+    verify(notificationOutbox, never()).reschedule(any(UUID.class), anyLong());
+  }
+
+  @Test
+  public void shouldNotRetryEmailRejectedByNotificationService() {
+    doThrow(new ExternalApiException(null, new LocalizedMessageDto()))
+        .when(notificationService).notify(user, SUBJECT, BODY);
+
+    dispatcher.dispatch();
+
+    verify(notificationOutbox).remove(notification.getId());
+    verify(notificationOutbox, never()).reschedule(any(UUID.class), anyLong());
+  }
+
+  @Test
+  public void shouldRemoveEmailOfRemovedUser() {
+    when(userRepository.findById(user.getId())).thenReturn(Optional.empty());
+
+    dispatcher.dispatch();
+
+    verify(notificationService, never()).notify(any(User.class), anyString(), anyString());
+    verify(notificationOutbox).remove(notification.getId());
+  }
+}
@@ -26,8 +26,8 @@ import com.google.common.collect.ImmutableList;
 import java.net.URI;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.auth.DummyUserMainDetailsDto;
@@ -63,6 +63,10 @@ public class UserContactDetailsNotificationServiceTest extends BaseCommunication
   @Before
   public void before() {
     service = prepareService();
+
+    ReflectionTestUtils.setField(service, "unknownEmailCacheMaxSize", 10L);
+    ReflectionTestUtils.setField(service, "unknownEmailCacheTtlSeconds", 60L);
+    service.init();
   }
 
   @Test
@@ -88,8 +92,8 @@ public class UserContactDetailsNotificationServiceTest extends BaseCommunication
 
     when(response.getBody()).thenReturn(page);
 
-    List<UserContactDetailsDto> contacts = service.findByEmail(DummyUserMainDetailsDto.EMAIL);
-    UserContactDetailsDto contact = contacts.get(0);
+    Optional<UserContactDetailsDto> contact = service
+        .findOneByEmail(DummyUserMainDetailsDto.EMAIL);
 
     // then
     verify(restTemplate).exchange(uriCaptor.capture(), eq(HttpMethod.GET),
@@ -100,15 +104,17 @@ public class UserContactDetailsNotificationServiceTest extends BaseCommunication
 
     assertThat(uri.toString())
         .containsSequence(url)
-        .containsSequence("email=" + DummyUserMainDetailsDto.EMAIL);
-    assertThat(contact.getEmailDetails().getEmail()).isEqualTo(DummyUserMainDetailsDto.EMAIL);
+        .containsSequence("email=" + DummyUserMainDetailsDto.EMAIL)
+        .containsSequence("size=1");
+    assertThat(contact.get().getEmailDetails().getEmail())
+        .isEqualTo(DummyUserMainDetailsDto.EMAIL);
 
     assertAuthHeader(entityCaptor.getValue());
     assertThat(entityCaptor.getValue().getBody()).isNull();
   }
 
   @Test
-  public void shouldReturnEmptyListIfContactDetailsCannotBeFoundByEmail() {
+  public void shouldReturnEmptyIfContactDetailsCannotBeFoundByEmail() {
     // given
     ResponseEntity response = mock(ResponseEntity.class);
 
@@ -123,7 +129,8 @@ public class UserContactDetailsNotificationServiceTest extends BaseCommunication
     PageDto<UserMainDetailsDto> page = new PageDto<>(new PageImpl<>(Collections.emptyList()));
     when(response.getBody()).thenReturn(page);
 
-    List<UserContactDetailsDto> contacts = service.findByEmail(DummyUserMainDetailsDto.EMAIL);
+    Optional<UserContactDetailsDto> contact = service
+        .findOneByEmail(DummyUserMainDetailsDto.EMAIL);
 
     // then
     verify(restTemplate).exchange(uriCaptor.capture(), eq(HttpMethod.GET),
@@ -135,10 +142,33 @@ public class UserContactDetailsNotificationServiceTest extends BaseCommunication
     assertThat(uri.toString())
         .containsSequence(url)
         .containsSequence("email=" + DummyUserMainDetailsDto.EMAIL);
-    assertThat(contacts).isEmpty();
+    assertThat(contact).isEmpty();
 
     assertAuthHeader(entityCaptor.getValue());
     assertThat(entityCaptor.getValue().getBody()).isNull();
   }
 
+  @Test
+  public void shouldNotAskAgainForUnknownEmail() {
+    // given
+    ResponseEntity response = mock(ResponseEntity.class);
+
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        any(ParameterizedTypeReference.class)))
+        .thenReturn(response);
+
+    PageDto<UserMainDetailsDto> page = new PageDto<>(new PageImpl<>(Collections.emptyList()));
+    when(response.getBody()).thenReturn(page);
+
+    // when
+    service.findOneByEmail(DummyUserMainDetailsDto.EMAIL);
+    Optional<UserContactDetailsDto> contact = service
+        .findOneByEmail(DummyUserMainDetailsDto.EMAIL);
+
+    // then
+    verify(restTemplate).exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        any(ParameterizedTypeReference.class));
+    assertThat(contact).isEmpty();
+  }
+
 }
@@ -0,0 +1,84 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.service.referencedata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.auth.DummyUserMainDetailsDto;
+import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserReferenceDataLookupTest {
+
+  @Mock
+  private UserReferenceDataService userReferenceDataService;
+
+  private UserReferenceDataLookup lookup;
+
+  private UserMainDetailsDto user = new DummyUserMainDetailsDto();
+  private UUID missingId = UUID.randomUUID();
+
+  @Before
+  public void setUp() {
+    lookup = new UserReferenceDataLookup(userReferenceDataService);
+  }
+
+  @Test
+  public void shouldFindPrefetchedUsersWithoutFetchingThemAgain() {
+    given(userReferenceDataService.findByIds(Arrays.asList(user.getId(), missingId)))
+        .willReturn(Collections.singletonList(user));
+
+    lookup.prefetch(Arrays.asList(user.getId(), missingId, user.getId()));
+
+    assertThat(lookup.find(user.getId())).isEqualTo(user);
+    assertThat(lookup.find(missingId)).isNull();
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldNotPrefetchUsersThatWereAlreadyFetched() {
+    given(userReferenceDataService.findOne(user.getId())).willReturn(user);
+    lookup.find(user.getId());
+
+    lookup.prefetch(Collections.singletonList(user.getId()));
+
+    verify(userReferenceDataService).findOne(user.getId());
+    verifyNoMoreInteractions(userReferenceDataService);
+  }
+
+  @Test
+  public void shouldFetchUserThatWasNotPrefetchedOnlyOnce() {
+    given(userReferenceDataService.findOne(user.getId())).willReturn(user);
+
+    assertThat(lookup.find(user.getId())).isEqualTo(user);
+    assertThat(lookup.find(user.getId())).isEqualTo(user);
+
+    verify(userReferenceDataService).findOne(user.getId());
+  }
+}
@@ -22,18 +22,29 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openlmis.auth.DummyUserMainDetailsDto;
+import org.openlmis.auth.dto.PageDto;
 import org.openlmis.auth.dto.ResultDto;
+import org.openlmis.auth.dto.referencedata.UserMainDetailsDto;
 import org.openlmis.auth.service.BaseCommunicationService;
 import org.openlmis.auth.service.BaseCommunicationServiceTest;
+import org.openlmis.auth.util.DynamicPageTypeReference;
 import org.openlmis.auth.util.DynamicResultDtoTypeReference;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -53,6 +64,7 @@ public class UserReferenceDataServiceTest extends BaseCommunicationServiceTest {
     BaseCommunicationService service = super.prepareService();
 
     ReflectionTestUtils.setField(service, "serviceUrl", "http://localhost/referencedata");
+    ReflectionTestUtils.setField(service, "pageSize", 2);
 
     return (UserReferenceDataService) service;
   }
@@ -72,6 +84,81 @@ public class UserReferenceDataServiceTest extends BaseCommunicationServiceTest {
     executeHasRightEndpoint(false);
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldFindUsersByIds() {
+    // given
+    UserMainDetailsDto user = new DummyUserMainDetailsDto();
+    List<UUID> ids = Arrays.asList(user.getId(), UUID.randomUUID());
+    ResponseEntity response = mock(ResponseEntity.class);
+
+    // when
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.POST),
+        any(HttpEntity.class), any(DynamicPageTypeReference.class)))
+        .thenReturn(response);
+    when(response.getBody())
+        .thenReturn(new PageDto<>(new PageImpl<>(Collections.singletonList(user))));
+
+    List<UserMainDetailsDto> result = service.findByIds(ids);
+
+    // then
+    assertThat(result).containsExactly(user);
+
+    verify(restTemplate).exchange(
+        uriCaptor.capture(), eq(HttpMethod.POST), entityCaptor.capture(),
+        any(DynamicPageTypeReference.class)
+    );
+
+    assertThat(uriCaptor.getValue().toString())
+        .startsWith(service.getServiceUrl() + service.getUrl() + "search?")
+        .contains("page=0")
+        .contains("size=2");
+
+    assertAuthHeader(entityCaptor.getValue());
+    assertThat((Map<String, Object>) entityCaptor.getValue().getBody())
+        .containsEntry("id", ids);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldFindUsersByIdsInChunksAndReadAllPages() {
+    // given
+    UserMainDetailsDto first = new DummyUserMainDetailsDto();
+    UserMainDetailsDto second = new DummyUserMainDetailsDto();
+    UserMainDetailsDto third = new DummyUserMainDetailsDto();
+    List<UUID> ids = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+    ResponseEntity response = mock(ResponseEntity.class);
+
+    // when
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.POST),
+        any(HttpEntity.class), any(DynamicPageTypeReference.class)))
+        .thenReturn(response);
+    when(response.getBody())
+        .thenReturn(new PageDto<>(new PageImpl<>(Collections.singletonList(first),
+            PageRequest.of(0, 1), 2)))
+        .thenReturn(new PageDto<>(new PageImpl<>(Collections.singletonList(second),
+            PageRequest.of(1, 1), 2)))
+        .thenReturn(new PageDto<>(new PageImpl<>(Collections.singletonList(third))));
+
+    List<UserMainDetailsDto> result = service.findByIds(ids);
+
+    // then
+    assertThat(result).containsExactly(first, second, third);
+
+    verify(restTemplate, times(3)).exchange(
+        uriCaptor.capture(), eq(HttpMethod.POST), entityCaptor.capture(),
+        any(DynamicPageTypeReference.class)
+    );
+
+    assertThat(uriCaptor.getAllValues().get(0).toString()).contains("page=0").contains("size=2");
+    assertThat(uriCaptor.getAllValues().get(1).toString()).contains("page=1").contains("size=2");
+    assertThat(uriCaptor.getAllValues().get(2).toString()).contains("page=0").contains("size=1");
+    assertThat((Map<String, Object>) entityCaptor.getAllValues().get(1).getBody())
+        .containsEntry("id", ids.subList(0, 2));
+    assertThat((Map<String, Object>) entityCaptor.getAllValues().get(2).getBody())
+        .containsEntry("id", ids.subList(2, 3));
+  }
+
   private void executeHasRightEndpoint(boolean expectedValue) {
     // given
     UUID userId = UUID.randomUUID();
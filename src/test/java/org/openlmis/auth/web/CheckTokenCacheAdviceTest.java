@@ -0,0 +1,105 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.auth.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CheckTokenCacheAdviceTest {
+  private static final String TOKEN = "token";
+
+  private CheckTokenCacheAdvice advice = new CheckTokenCacheAdvice();
+
+  private MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+  private MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(advice, "maxAgeSeconds", 30L);
+    servletRequest.setParameter(TOKEN, TOKEN);
+  }
+
+  @Test
+  public void shouldAllowPrivateCachingForConfiguredTime() {
+    Map<String, Object> body = claims(TimeUnit.HOURS.toSeconds(1));
+
+    assertSame(body, write(body));
+    assertEquals("max-age=30, private", servletResponse.getHeader(HttpHeaders.CACHE_CONTROL));
+    assertNotNull(servletResponse.getHeader(HttpHeaders.ETAG));
+  }
+
+  @Test
+  public void shouldNotAllowCachingLongerThanTokenIsValid() {
+    write(claims(10));
+
+    // a second may pass between building the claims and the check
+    assertTrue(servletResponse.getHeader(HttpHeaders.CACHE_CONTROL)
+        .matches("max-age=(9|10), private"));
+  }
+
+  @Test
+  public void shouldRequireRevalidationIfCachingIsDisabled() {
+    ReflectionTestUtils.setField(advice, "maxAgeSeconds", 0L);
+
+    write(claims(TimeUnit.HOURS.toSeconds(1)));
+
+    assertEquals("no-cache, private", servletResponse.getHeader(HttpHeaders.CACHE_CONTROL));
+  }
+
+  @Test
+  public void shouldReturnNotModifiedIfEtagMatches() {
+    Map<String, Object> body = claims(TimeUnit.HOURS.toSeconds(1));
+    write(body);
+
+    String etag = servletResponse.getHeader(HttpHeaders.ETAG);
+    servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+    servletResponse = new MockHttpServletResponse();
+
+    assertNull(write(body));
+    assertEquals(HttpStatus.NOT_MODIFIED.value(), servletResponse.getStatus());
+    assertEquals(etag, servletResponse.getHeader(HttpHeaders.ETAG));
+  }
+
+  private Map<String, Object> claims(long expiresIn) {
+    long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    return ImmutableMap.of("user_name", "admin", "exp", now + expiresIn);
+  }
+
+  private Object write(Map<String, Object> body) {
+    ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+    Object result = advice.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null,
+        new ServletServerHttpRequest(servletRequest), response);
+    response.close();
+    return result;
+  }
+}
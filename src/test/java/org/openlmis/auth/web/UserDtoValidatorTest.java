@@ -18,6 +18,9 @@ package org.openlmis.auth.web;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.auth.i18n.MessageKeys.ERROR_USER_NOT_FOUND;
 import static org.openlmis.auth.service.PermissionService.USERS_MANAGE;
@@ -43,6 +46,7 @@ import org.openlmis.auth.i18n.ExposedMessageSource;
 import org.openlmis.auth.i18n.MessageKeys;
 import org.openlmis.auth.repository.UserRepository;
 import org.openlmis.auth.service.PermissionService;
+import org.openlmis.auth.service.referencedata.UserReferenceDataLookup;
 import org.openlmis.auth.service.referencedata.UserReferenceDataService;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
@@ -168,6 +172,17 @@ public class UserDtoValidatorTest {
     assertErrorMessage(errors, ID, ERROR_USER_NOT_FOUND);
   }
 
+  @Test
+  public void shouldTakeReferenceDataUserFromGivenLookup() {
+    UserReferenceDataLookup lookup = mock(UserReferenceDataLookup.class);
+    when(lookup.find(request.getId())).thenReturn(null);
+
+    ((UserDtoValidator) validator).validate(request, errors, lookup);
+
+    assertErrorMessage(errors, ID, ERROR_USER_NOT_FOUND);
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
   private void prepareForValidateInvariants() {
     when(permissionService.hasRight(USERS_MANAGE)).thenReturn(false);
     when(userRepository.findById(request.getId()))
@@ -38,6 +38,7 @@ import org.openlmis.auth.exception.ExternalApiException;
 import org.openlmis.auth.exception.NotFoundException;
 import org.openlmis.auth.exception.PermissionMessageException;
 import org.openlmis.auth.exception.ServerException;
+import org.openlmis.auth.exception.ServiceUnavailableMessageException;
 import org.openlmis.auth.exception.ValidationMessageException;
 import org.openlmis.auth.i18n.MessageService;
 import org.openlmis.auth.util.Message;
@@ -165,6 +166,19 @@ public class WebErrorHandlingTest {
     assertMessage(message, MESSAGE_KEY);
   }
 
+  @Test
+  public void shouldHandleServiceUnavailableMessageException() {
+    // given
+    ServiceUnavailableMessageException exp = new ServiceUnavailableMessageException(MESSAGE_KEY);
+
+    // when
+    mockMessage(MESSAGE_KEY);
+    LocalizedMessage message = errorHandler.handleServiceUnavailableMessageException(exp);
+
+    // then
+    assertMessage(message, MESSAGE_KEY);
+  }
+
   @Test
   public void shouldHandleExternalApiException() {
     // given